@@ -0,0 +1,654 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.ant.tasks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+
+import org.apache.tools.ant.taskdefs.MatchingTask;
+
+/**
+ * <p>The <code>ImageRenditionTask</code> class makes smaller copies,
+ * or renditions, of a directory of pictures.
+ * Each nested <code>&lt;rendition&gt;</code> element names a rendition
+ * and gives the box that it must fit inside;
+ * the pictures are scaled to fit without changing their shape,
+ * but are never made bigger, and are saved as JPEG files
+ * with the compression <code>quality</code> attribute (default 0.8).
+ * The <code>srcdir</code> attribute says where the pictures are,
+ * and the usual <code>includes</code> and <code>excludes</code>
+ * attributes and elements choose which of them to use.
+ * The renditions go in the <code>destdir</code> directory.</p>
+ *
+ * <p>The task also writes a manifest, a properties file
+ * in the destination directory called <code>renditions.properties</code>
+ * unless the <code>manifest</code> attribute says otherwise.
+ * For a picture called <code>rose.jpg</code> and a rendition called
+ * <code>thumb</code>, it holds:</p>
+ *
+ * <pre>
+ * rose.jpg.hash=(a SHA-1 hash of the picture and the settings)
+ * rose.jpg.thumb=rose-thumb.jpg
+ * rose.jpg.thumb.width=120
+ * rose.jpg.thumb.height=135
+ * </pre>
+ *
+ * <p>The web application uses the manifest to find a rendition.
+ * The task uses the hashes to skip pictures that haven't changed,
+ * so only new and changed pictures are processed.
+ * These are processed in parallel, by the number of threads in the
+ * <code>threads</code> attribute (default one for each processor).</p>
+ */
+
+public class ImageRenditionTask extends MatchingTask {
+
+    /** The default name of the manifest. */
+    private static final String MANIFEST = "renditions.properties";
+
+    /** The default JPEG compression quality. */
+    private static final float DEFAULT_QUALITY = 0.8f;
+
+    /** Used to write hashes in hexadecimal. */
+    private static final String HEX = "0123456789abcdef";
+
+    /** The size of the buffer used when hashing a picture. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The directory that holds the pictures. */
+    private File srcdir;
+
+    /** The directory for the renditions. */
+    private File destdir;
+
+    /** The manifest, or <code>null</code> for the default. */
+    private File manifest;
+
+    /** The JPEG compression quality, from 0 to 1. */
+    private float quality = DEFAULT_QUALITY;
+
+    /** The number of pictures to process at once. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The nested rendition elements. */
+    private Vector renditions = new Vector();
+
+    /**
+     * <p>Makes the renditions of any new or changed pictures
+     * and writes the manifest.</p>
+     * <p>This method does usage checks on the task's attributes
+     * and its nested elements.
+     * It will throw a <code>BuildException</code> if there is a violation.</p>
+     */
+    public final void execute() {
+        // This is the usage information
+        if (srcdir == null || !srcdir.isDirectory()) {
+            throw new BuildException("You must specify a srcdir attribute "
+                                     + "that is a directory.");
+        }
+        if (destdir == null) {
+            throw new BuildException("You must specify a destdir attribute.");
+        }
+        if (renditions.size() == 0) {
+            throw new BuildException("You must specify at least one "
+                                     + "<rendition> element.");
+        }
+        if (quality < 0 || quality > 1) {
+            throw new BuildException("The quality attribute must be "
+                                     + "between 0 and 1.");
+        }
+        Enumeration e = renditions.elements();
+        while (e.hasMoreElements()) {
+            Rendition rendition = (Rendition) e.nextElement();
+            if (rendition.getName() == null || rendition.getWidth() < 1
+                || rendition.getHeight() < 1) {
+                throw new BuildException("Each <rendition> element needs "
+                                         + "a name, a width and a height.");
+            }
+        }
+
+        if (manifest == null) {
+            manifest = new File(destdir, MANIFEST);
+        }
+        destdir.mkdirs();
+
+        Properties previous = loadManifest();
+        Properties current = new Properties();
+        String settings = getSettings();
+
+        // Work out which pictures have changed.
+        // This is a List of Jobs.
+        List work = new ArrayList();
+        DirectoryScanner scanner = getDirectoryScanner(srcdir);
+        String[] files = scanner.getIncludedFiles();
+        int skipped = 0;
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].replace(File.separatorChar, '/');
+            File picture = new File(srcdir, files[i]);
+            String hash = hash(picture, settings);
+
+            if (hash.equals(previous.getProperty(name + ".hash"))
+                && isComplete(previous, name)) {
+                copyEntries(previous, current, name);
+                skipped++;
+            } else {
+                work.add(new Job(name, picture, hash));
+            }
+        }
+
+        if (work.size() > 0) {
+            log("Making renditions of " + work.size() + " picture(s) in "
+                + destdir, Project.MSG_INFO);
+            List jobs = new ArrayList(work);
+            List failures = new ArrayList();
+            runWorkers(work, failures);
+
+            if (failures.size() > 0) {
+                throw new BuildException((String) failures.get(0));
+            }
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = (Job) jobs.get(i);
+                copyEntries(job.entries, current, job.name);
+                log("Made renditions of " + job.name, Project.MSG_VERBOSE);
+            }
+        }
+        if (skipped > 0) {
+            log("Skipped " + skipped + " unchanged picture(s).",
+                Project.MSG_VERBOSE);
+        }
+
+        // Only touch the manifest if something has changed
+        if (!current.equals(previous)) {
+            storeManifest(current);
+        }
+    }
+
+    /**
+     * <p>Starts the worker threads and waits for them to finish.</p>
+     * @param work The pictures to process. This is a List of Jobs,
+     * which the workers empty.
+     * @param failures The list for the problems that the workers find
+     */
+    private void runWorkers(final List work, final List failures) {
+        int count = Math.max(1, Math.min(threads, work.size()));
+        Thread[] workers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Thread(new Worker(work, failures),
+                                    "rendition-" + i);
+            workers[i].start();
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                workers[i].join();
+            } catch (InterruptedException ie) {
+                throw new BuildException("Interrupted while making "
+                                         + "renditions.");
+            }
+        }
+    }
+
+    /**
+     * <p>Makes every rendition of one picture.</p>
+     * @param job The picture
+     * @throws IOException If the picture cannot be read
+     * or a rendition cannot be written
+     */
+    private void process(final Job job) throws IOException {
+        BufferedImage picture = ImageIO.read(job.file);
+        if (picture == null) {
+            throw new IOException(job.name + " is not a picture "
+                                  + "that can be read.");
+        }
+
+        job.entries.setProperty(job.name + ".hash", job.hash);
+
+        String base = job.name;
+        int dot = base.lastIndexOf('.');
+        if (dot > base.lastIndexOf('/')) {
+            base = base.substring(0, dot);
+        }
+
+        Enumeration e = renditions.elements();
+        while (e.hasMoreElements()) {
+            Rendition rendition = (Rendition) e.nextElement();
+
+            // Fit the picture inside the box, but never make it bigger.
+            // The web application's ThumbnailServlet sizes pictures
+            // the same way when there is no rendition.
+            double scale = Math.min(1.0,
+                Math.min((double) rendition.getWidth() / picture.getWidth(),
+                         (double) rendition.getHeight()
+                         / picture.getHeight()));
+            int w = Math.max(1, (int) Math.round(picture.getWidth() * scale));
+            int h = Math.max(1,
+                             (int) Math.round(picture.getHeight() * scale));
+
+            // JPEG has no transparency, so put the picture on white
+            BufferedImage small =
+                new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = small.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, w, h);
+                graphics.drawImage(picture, 0, 0, w, h, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            String output = base + "-" + rendition.getName() + ".jpg";
+            File file = new File(destdir, output);
+            file.getParentFile().mkdirs();
+            writeJpeg(small, file);
+
+            String key = job.name + "." + rendition.getName();
+            job.entries.setProperty(key, output);
+            job.entries.setProperty(key + ".width", String.valueOf(w));
+            job.entries.setProperty(key + ".height", String.valueOf(h));
+        }
+    }
+
+    /**
+     * <p>Writes a picture as a JPEG file
+     * with the task's compression quality.</p>
+     * @param picture The picture
+     * @param file The file
+     * @throws IOException If the file cannot be written
+     */
+    private void writeJpeg(final BufferedImage picture, final File file)
+        throws IOException {
+        ImageWriter writer =
+            ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+
+        file.delete();
+        ImageOutputStream out = ImageIO.createImageOutputStream(file);
+        try {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(picture, null, null), param);
+        } finally {
+            out.close();
+            writer.dispose();
+        }
+    }
+
+    /**
+     * <p>Hashes a picture together with the task's settings,
+     * so that changing either makes new renditions.</p>
+     * @param file The picture
+     * @param settings The settings from <code>getSettings()</code>
+     * @return The hash in hexadecimal
+     */
+    private static String hash(final File file, final String settings) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(settings.getBytes("UTF-8"));
+
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+
+            byte[] bytes = digest.digest();
+            StringBuffer hex = new StringBuffer(bytes.length * 2);
+            for (int i = 0; i < bytes.length; i++) {
+                hex.append(HEX.charAt((bytes[i] >> 4) & 0xf));
+                hex.append(HEX.charAt(bytes[i] & 0xf));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new BuildException(nsae);
+        } catch (IOException ioe) {
+            throw new BuildException("Cannot read " + file, ioe);
+        }
+    }
+
+    /**
+     * <p>Describes the settings that affect the renditions.</p>
+     * @return String
+     */
+    private String getSettings() {
+        StringBuffer settings = new StringBuffer();
+        settings.append(quality);
+        Enumeration e = renditions.elements();
+        while (e.hasMoreElements()) {
+            Rendition rendition = (Rendition) e.nextElement();
+            settings.append(';').append(rendition.getName())
+                .append('=').append(rendition.getWidth())
+                .append('x').append(rendition.getHeight());
+        }
+        return settings.toString();
+    }
+
+    /**
+     * <p>Checks that every rendition of a picture in the manifest
+     * is still in the destination directory.</p>
+     * @param entries The manifest
+     * @param name The picture's name
+     * @return boolean
+     */
+    private boolean isComplete(final Properties entries, final String name) {
+        Enumeration e = renditions.elements();
+        while (e.hasMoreElements()) {
+            Rendition rendition = (Rendition) e.nextElement();
+            String output =
+                entries.getProperty(name + "." + rendition.getName());
+            if (output == null || !new File(destdir, output).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>Copies a picture's entries from one manifest to another.</p>
+     * @param from The manifest to copy from
+     * @param to The manifest to copy to
+     * @param name The picture's name
+     */
+    private static void copyEntries(final Properties from,
+                                    final Properties to,
+                                    final String name) {
+        Enumeration e = from.propertyNames();
+        while (e.hasMoreElements()) {
+            String key = (String) e.nextElement();
+            if (key.startsWith(name + ".")) {
+                to.setProperty(key, from.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * <p>Reads the manifest from the last run, if there is one.</p>
+     * @return Properties
+     */
+    private Properties loadManifest() {
+        Properties entries = new Properties();
+        if (manifest.isFile()) {
+            try {
+                InputStream in = new FileInputStream(manifest);
+                try {
+                    entries.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ioe) {
+                // Make every rendition again
+                log("Cannot read " + manifest + ": " + ioe.getMessage(),
+                    Project.MSG_WARN);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * <p>Writes the manifest.</p>
+     * @param entries The manifest
+     */
+    private void storeManifest(final Properties entries) {
+        try {
+            OutputStream out = new FileOutputStream(manifest);
+            try {
+                entries.store(out, "Picture renditions");
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            throw new BuildException("Cannot write " + manifest, ioe);
+        }
+    }
+
+    /**
+     * <p>The setter method for the <code>srcdir</code> attribute.</p>
+     * @param dir The directory that holds the pictures
+     */
+    public final void setSrcdir(final File dir) {
+        this.srcdir = dir;
+    }
+
+    /**
+     * <p>The setter method for the <code>destdir</code> attribute.</p>
+     * @param dir The directory for the renditions
+     */
+    public final void setDestdir(final File dir) {
+        this.destdir = dir;
+    }
+
+    /**
+     * <p>The setter method for the <code>manifest</code> attribute.</p>
+     * @param file The manifest
+     */
+    public final void setManifest(final File file) {
+        this.manifest = file;
+    }
+
+    /**
+     * <p>The setter method for the <code>quality</code> attribute.</p>
+     * @param aQuality The JPEG compression quality, from 0 to 1
+     */
+    public final void setQuality(final float aQuality) {
+        this.quality = aQuality;
+    }
+
+    /**
+     * <p>The setter method for the <code>threads</code> attribute.</p>
+     * @param count The number of pictures to process at once
+     */
+    public final void setThreads(final int count) {
+        this.threads = count;
+    }
+
+    /**
+     * <p>Creates a nested <code>&lt;rendition&gt;</code> element.</p>
+     * @return Rendition
+     */
+    public final Rendition createRendition() {
+        Rendition rendition = new Rendition();
+        renditions.add(rendition);
+        return rendition;
+    }
+
+    /**
+     * <p>A nested <code>&lt;rendition&gt;</code> element.</p>
+     */
+    public static class Rendition {
+
+        /** The <code>name</code> attribute of this element. */
+        private String name;
+
+        /** The <code>width</code> attribute of this element. */
+        private int width;
+
+        /** The <code>height</code> attribute of this element. */
+        private int height;
+
+        /**
+         * <p>The mutator method for the <code>name</code> attribute.</p>
+         * @param aName The name of the rendition
+         */
+        public final void setName(final String aName) {
+            this.name = aName;
+        }
+
+        /**
+         * <p>The accessor method for the <code>name</code> attribute.</p>
+         * @return String The name of the rendition
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * <p>The mutator method for the <code>width</code> attribute.</p>
+         * @param aWidth The largest width, in pixels
+         */
+        public final void setWidth(final int aWidth) {
+            this.width = aWidth;
+        }
+
+        /**
+         * <p>The accessor method for the <code>width</code> attribute.</p>
+         * @return int The largest width, in pixels
+         */
+        public final int getWidth() {
+            return width;
+        }
+
+        /**
+         * <p>The mutator method for the <code>height</code> attribute.</p>
+         * @param aHeight The largest height, in pixels
+         */
+        public final void setHeight(final int aHeight) {
+            this.height = aHeight;
+        }
+
+        /**
+         * <p>The accessor method for the <code>height</code> attribute.</p>
+         * @return int The largest height, in pixels
+         */
+        public final int getHeight() {
+            return height;
+        }
+    }
+
+    /**
+     * <p>One picture to process.</p>
+     */
+    private static final class Job {
+
+        /** The picture's name, relative to the source directory. */
+        private final String name;
+
+        /** The picture. */
+        private final File file;
+
+        /** The picture's hash. */
+        private final String hash;
+
+        /** The picture's manifest entries, once it has been processed. */
+        private final Properties entries = new Properties();
+
+        /**
+         * <p>Creates a job.</p>
+         * @param aName The picture's name
+         * @param aFile The picture
+         * @param aHash The picture's hash
+         */
+        private Job(final String aName, final File aFile,
+                    final String aHash) {
+            this.name = aName;
+            this.file = aFile;
+            this.hash = aHash;
+        }
+    }
+
+    /**
+     * <p>Takes pictures from the list of work
+     * until there are none left.</p>
+     */
+    private final class Worker implements Runnable {
+
+        /** The pictures still to process. This is a List of Jobs. */
+        private final List work;
+
+        /** The problems found by the workers. */
+        private final List failures;
+
+        /**
+         * <p>Creates a worker.</p>
+         * @param theWork The pictures still to process,
+         * which the workers share
+         * @param theFailures The problems found by the workers,
+         * which they share
+         */
+        private Worker(final List theWork, final List theFailures) {
+            this.work = theWork;
+            this.failures = theFailures;
+        }
+
+        /**
+         * <p>Processes pictures until there are none left
+         * or one of the workers has failed.</p>
+         */
+        public void run() {
+            while (true) {
+                Job job;
+                synchronized (work) {
+                    if (work.isEmpty()) {
+                        return;
+                    }
+                    job = (Job) work.remove(0);
+                }
+                synchronized (failures) {
+                    if (!failures.isEmpty()) {
+                        return;
+                    }
+                }
+
+                try {
+                    process(job);
+                } catch (IOException ioe) {
+                    synchronized (failures) {
+                        failures.add("Cannot make renditions of " + job.name
+                                     + ": " + ioe.getMessage());
+                    }
+                } catch (RuntimeException re) {
+                    synchronized (failures) {
+                        failures.add("Cannot make renditions of " + job.name
+                                     + ": " + re);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.ant.tasks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+
+import org.apache.tools.ant.taskdefs.JDBCTask;
+
+/**
+ * <p>The <code>SchemaMigrationTask</code> class brings a database schema
+ * up to date by running numbered SQL scripts, or migrations,
+ * that it hasn't run before.
+ * The <code>dir</code> attribute names the directory of migrations;
+ * each one is called <code>NNN-description.sql</code>,
+ * where <code>NNN</code> is its version number,
+ * and they are run in order of version.
+ * The connection is set up with the same attributes and nested
+ * <code>&lt;classpath&gt;</code> element as the <code>&lt;sql&gt;</code>
+ * task.</p>
+ *
+ * <p>The versions that have been run are kept in a table in the database,
+ * called <code>schema_version</code> unless the <code>table</code>
+ * attribute says otherwise, which the task creates if necessary.
+ * Each migration is committed with its row in the table,
+ * so a build that fails part of the way through carries on
+ * from the failed migration next time.
+ * Some databases, MySQL among them, commit changes to tables
+ * as soon as they are made, so a migration that fails half way
+ * may have to be tidied up by hand.</p>
+ *
+ * <p>Statements in a migration end with a semicolon at the end of a line.
+ * Lines that start with <code>--</code> or <code>#</code>
+ * are comments.</p>
+ */
+
+public class SchemaMigrationTask extends JDBCTask {
+
+    /** The default name of the version table. */
+    private static final String TABLE = "schema_version";
+
+    /** The names of migrations. */
+    private static final Pattern MIGRATION =
+        Pattern.compile("(\\d+)-(.+)\\.sql");
+
+    /** The directory of migrations. */
+    private File dir;
+
+    /** The name of the version table. */
+    private String table = TABLE;
+
+    /**
+     * <p>Runs the migrations that haven't been run.</p>
+     * <p>This method does usage checks on the task's attributes.
+     * It will throw a <code>BuildException</code> if there is a violation.</p>
+     */
+    public final void execute() {
+        // This is the usage information
+        if (dir == null || !dir.isDirectory()) {
+            throw new BuildException("You must specify a dir attribute "
+                                     + "that is a directory.");
+        }
+
+        Migration[] migrations = findMigrations();
+
+        Connection con = getConnection();
+        try {
+            if (!isValidRdbms(con)) {
+                return;
+            }
+            int current = getCurrentVersion(con);
+            int applied = 0;
+            for (int i = 0; i < migrations.length; i++) {
+                if (migrations[i].version > current) {
+                    migrate(con, migrations[i]);
+                    applied++;
+                }
+            }
+            if (applied == 0) {
+                log("The schema is up to date at version " + current);
+            } else {
+                log("Ran " + applied + " migration(s); the schema is now "
+                    + "at version "
+                    + migrations[migrations.length - 1].version);
+            }
+        } catch (SQLException sqle) {
+            throw new BuildException(sqle, getLocation());
+        } finally {
+            try {
+                con.close();
+            } catch (SQLException sqle) {
+                // Nothing more we can do
+            }
+        }
+    }
+
+    /**
+     * <p>Finds the migrations in the directory,
+     * in order of version.</p>
+     * @return Migration[]
+     */
+    private Migration[] findMigrations() {
+        String[] names = dir.list();
+        List found = new ArrayList();
+        for (int i = 0; i < names.length; i++) {
+            Matcher matcher = MIGRATION.matcher(names[i]);
+            if (matcher.matches()) {
+                found.add(new Migration(Integer.parseInt(matcher.group(1)),
+                                        matcher.group(2).replace('-', ' '),
+                                        new File(dir, names[i])));
+            } else {
+                log("Skipping " + names[i], Project.MSG_VERBOSE);
+            }
+        }
+
+        Migration[] migrations =
+            (Migration[]) found.toArray(new Migration[found.size()]);
+        Arrays.sort(migrations);
+        for (int i = 1; i < migrations.length; i++) {
+            if (migrations[i].version == migrations[i - 1].version) {
+                throw new BuildException(migrations[i - 1].file + " and "
+                                         + migrations[i].file
+                                         + " have the same version.");
+            }
+        }
+        return migrations;
+    }
+
+    /**
+     * <p>Creates the version table if necessary
+     * and returns the latest version that has been run.</p>
+     * @param con The connection
+     * @return The version, or 0 if no migrations have been run
+     * @throws SQLException If the table cannot be read
+     */
+    private int getCurrentVersion(final Connection con)
+        throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                         + "version INTEGER NOT NULL PRIMARY KEY, "
+                         + "description VARCHAR(255) NOT NULL, "
+                         + "applied TIMESTAMP NOT NULL)");
+            ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM "
+                                             + table);
+            try {
+                rs.next();
+                return rs.getInt(1);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * <p>Runs a migration and records its version.</p>
+     * @param con The connection
+     * @param migration The migration
+     * @throws SQLException If the version cannot be recorded
+     */
+    private void migrate(final Connection con, final Migration migration)
+        throws SQLException {
+        log("Migrating to version " + migration.version + ": "
+            + migration.description);
+
+        String[] statements;
+        try {
+            statements = readStatements(migration.file);
+        } catch (IOException ioe) {
+            throw new BuildException("Cannot read " + migration.file, ioe,
+                                     getLocation());
+        }
+
+        Statement stmt = con.createStatement();
+        try {
+            for (int i = 0; i < statements.length; i++) {
+                log(statements[i], Project.MSG_VERBOSE);
+                try {
+                    stmt.execute(statements[i]);
+                } catch (SQLException sqle) {
+                    rollback(con);
+                    throw new BuildException(migration.file + " failed: "
+                                             + sqle.getMessage(), sqle,
+                                             getLocation());
+                }
+            }
+        } finally {
+            stmt.close();
+        }
+
+        PreparedStatement record =
+            con.prepareStatement("INSERT INTO " + table
+                                 + " (version, description, applied)"
+                                 + " VALUES (?, ?, CURRENT_TIMESTAMP)");
+        try {
+            record.setInt(1, migration.version);
+            record.setString(2, migration.description);
+            record.executeUpdate();
+        } finally {
+            record.close();
+        }
+        if (!con.getAutoCommit()) {
+            con.commit();
+        }
+    }
+
+    /**
+     * <p>Reads the statements in a migration.</p>
+     * @param file The migration
+     * @return String[]
+     * @throws IOException If the file cannot be read
+     */
+    private static String[] readStatements(final File file)
+        throws IOException {
+        List statements = new ArrayList();
+        StringBuffer sql = new StringBuffer();
+
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.length() == 0 || trimmed.startsWith("--")
+                    || trimmed.startsWith("#")) {
+                    continue;
+                }
+                if (trimmed.endsWith(";")) {
+                    sql.append(trimmed.substring(0, trimmed.length() - 1));
+                    statements.add(sql.toString());
+                    sql.setLength(0);
+                } else {
+                    sql.append(trimmed).append('\n');
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        // The last statement needn't end with a semicolon
+        if (sql.toString().trim().length() > 0) {
+            statements.add(sql.toString());
+        }
+        return (String[]) statements.toArray(new String[statements.size()]);
+    }
+
+    /**
+     * <p>Rolls back a failed migration, ignoring any errors.</p>
+     * @param con The connection
+     */
+    private static void rollback(final Connection con) {
+        try {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+            }
+        } catch (SQLException sqle) {
+            // The original error is more useful
+        }
+    }
+
+    /**
+     * <p>The setter method for the <code>dir</code> attribute.</p>
+     * @param aDir The directory of migrations
+     */
+    public final void setDir(final File aDir) {
+        this.dir = aDir;
+    }
+
+    /**
+     * <p>The setter method for the <code>table</code> attribute.</p>
+     * @param aTable The name of the version table
+     */
+    public final void setTable(final String aTable) {
+        this.table = aTable;
+    }
+
+    /**
+     * <p>One migration script.</p>
+     */
+    private static final class Migration implements Comparable {
+
+        /** The version that the migration brings the schema to. */
+        private final int version;
+
+        /** What the migration does, from its file name. */
+        private final String description;
+
+        /** The script. */
+        private final File file;
+
+        /**
+         * <p>Creates a migration.</p>
+         * @param aVersion The version
+         * @param aDescription What the migration does
+         * @param aFile The script
+         */
+        private Migration(final int aVersion, final String aDescription,
+                          final File aFile) {
+            this.version = aVersion;
+            this.description = aDescription;
+            this.file = aFile;
+        }
+
+        /**
+         * <p>Orders migrations by version.</p>
+         * @param other Another migration
+         * @return int
+         */
+        public int compareTo(final Object other) {
+            int otherVersion = ((Migration) other).version;
+            if (version < otherVersion) {
+                return -1;
+            }
+            if (version > otherVersion) {
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
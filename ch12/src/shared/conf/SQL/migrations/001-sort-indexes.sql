@@ -0,0 +1,10 @@
+-- Indexes for the orders in which the plants are listed.
+-- Each index ends with the columns that SelectData sorts on,
+-- so MySQL can read the rows in order instead of sorting the table.
+-- The name index also serves name LIKE 'x%' and the letter counts,
+-- since the table's collation ignores case.
+
+ALTER TABLE plants
+  ADD INDEX plants_name (name, id),
+  ADD INDEX plants_common_name (common_name, id),
+  ADD INDEX plants_family (family, name, id);
@@ -2,6 +2,8 @@ CREATE DATABASE IF NOT EXISTS plants;
 
 USE plants;
 
+-- The indexes are added by the scripts in SQL/migrations
+
 CREATE TABLE plants (
   id INTEGER NOT NULL AUTO_INCREMENT PRIMARY KEY,
   name VARCHAR(80) NOT NULL,
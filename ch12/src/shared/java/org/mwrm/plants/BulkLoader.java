@@ -0,0 +1,953 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The <code>BulkLoader</code> class loads plants into the database
+ * from files in either of two formats:</p>
+ *
+ * <ul>
+ * <li><code>CSV</code>: Comma-separated values with a header row
+ * naming the columns, as written by <code>PlantExporter</code>.
+ * Empty fields are loaded as <code>NULL</code>.</li>
+ * <li><code>SQL</code>: <code>INSERT INTO plants</code> statements,
+ * such as those in <code>plantsInsert.sql</code>.
+ * <code>USE</code> statements and comment lines are skipped.</li>
+ * </ul>
+ *
+ * <p>Rather than run each row as a statement of its own, the loader
+ * sends the rows as batches of prepared inserts, of
+ * <code>batchSize</code> rows (default 500), and commits every
+ * <code>commitInterval</code> rows (default 10000).
+ * With the MySQL driver, adding
+ * <code>rewriteBatchedStatements=true</code> to the URL
+ * lets the driver send each batch as a single statement.
+ * A CSV file can instead be loaded by the server itself
+ * with <code>LOAD DATA LOCAL INFILE</code>, which is faster still;
+ * if the server or the driver won't allow it,
+ * the loader falls back to batches and records why.</p>
+ *
+ * <p>The loader keeps one insert open for each set of columns,
+ * so a file that mixes rows with and without some columns
+ * still fills whole batches. Rows with different columns may
+ * therefore reach the table in a different order from the file,
+ * and be given <code>id</code>s in that order.</p>
+ *
+ * <p>The loader counts the rows that it loads and the time it takes,
+ * which <code>toString()</code> reports as rows per second.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java org.mwrm.plants.BulkLoader [-batch rows] [-commit rows]
+ *     [-loaddata] file...
+ * </pre>
+ *
+ * <p>Files whose names end in <code>.csv</code> are read as CSV
+ * and others as SQL.
+ * The database is the one in <code>database.properties</code>.</p>
+ */
+
+public final class BulkLoader {
+
+    /** Comma-separated values. */
+    public static final int CSV = 1;
+
+    /** <code>INSERT</code> statements. */
+    public static final int SQL = 2;
+
+    /** The number of rows in a batch if the loader isn't told. */
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** The number of rows in a transaction if the loader isn't told. */
+    private static final int DEFAULT_COMMIT_INTERVAL = 10000;
+
+    /** The number of milliseconds in a second. */
+    private static final double SECOND = 1000.0;
+
+    /** The columns that may be loaded. */
+    private static final List COLUMNS = Arrays.asList(new String[] {
+        "id", "name", "common_name", "family",
+        "description", "image", "cultivar_name"
+    });
+
+    /** The connection to load the plants through. */
+    private final Connection con;
+
+    /** The number of rows in a batch. */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** The number of rows in a transaction. */
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+    /**
+     * The open inserts, keyed on their <code>List</code> of columns,
+     * in the order they were first used.
+     */
+    private final Map inserts = new LinkedHashMap();
+
+    /** The inserts that have rows waiting to be sent. */
+    private final List pending = new ArrayList();
+
+    /** The number of rows waiting to be sent. */
+    private int batched;
+
+    /** The number of rows in the current transaction. */
+    private int uncommitted;
+
+    /** The number of rows loaded. */
+    private long rows;
+
+    /** The number of batches sent. */
+    private long batches;
+
+    /** The number of transactions committed. */
+    private long commits;
+
+    /** The time spent loading, in milliseconds. */
+    private long elapsed;
+
+    /** The number of times <code>LOAD DATA</code> was refused. */
+    private long fallbacks;
+
+    /** Why <code>LOAD DATA</code> was last refused, or <code>null</code>. */
+    private String loadDataError;
+
+    /**
+     * <p>Creates a loader.</p>
+     * @param aCon The connection to load the plants through
+     */
+    public BulkLoader(final Connection aCon) {
+        this.con = aCon;
+    }
+
+    /**
+     * <p>Sets the number of rows sent to the database at once.</p>
+     * @param size The number of rows
+     */
+    public void setBatchSize(final int size) {
+        this.batchSize = Math.max(1, size);
+    }
+
+    /**
+     * <p>Sets the number of rows loaded in each transaction.</p>
+     * @param interval The number of rows
+     */
+    public void setCommitInterval(final int interval) {
+        this.commitInterval = Math.max(1, interval);
+    }
+
+    /**
+     * <p>Loads the plants from a file.
+     * If the file is CSV and <code>loadData</code> is true,
+     * the server is asked to load it with
+     * <code>LOAD DATA LOCAL INFILE</code> first;
+     * if that fails, <code>getLoadDataError()</code> says why
+     * and the file is loaded in batches instead.</p>
+     * @param file The file
+     * @param loadData Whether to try <code>LOAD DATA</code>
+     * @return The number of plants loaded
+     * @throws SQLException If a plant cannot be loaded
+     * @throws IOException If the file cannot be read
+     */
+    public int load(final File file, final boolean loadData)
+        throws SQLException, IOException {
+
+        int format = SQL;
+        if (file.getName().toLowerCase().endsWith(".csv")) {
+            format = CSV;
+        }
+
+        loadDataError = null;
+        if (format == CSV && loadData) {
+            try {
+                return loadData(file);
+            } catch (SQLException sqle) {
+                // Usually the server or driver doesn't allow local files
+                fallbacks++;
+                loadDataError = sqle.getMessage();
+            }
+        }
+
+        Reader in = new BufferedReader(new FileReader(file));
+        try {
+            return load(in, format);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * <p>Loads the plants from a reader, which is not closed.
+     * The plants are committed every <code>commitInterval</code> rows,
+     * so if there's a problem, the plants before the last commit
+     * stay loaded.</p>
+     * @param in Where to read the plants
+     * @param format <code>CSV</code> or <code>SQL</code>
+     * @return The number of plants loaded
+     * @throws SQLException If a plant cannot be loaded
+     * @throws IOException If the plants cannot be read
+     */
+    public int load(final Reader in, final int format)
+        throws SQLException, IOException {
+
+        long start = System.currentTimeMillis();
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+
+        int count = 0;
+        boolean done = false;
+        try {
+            if (format == CSV) {
+                count = loadCsv(new PushbackReader(in));
+            } else {
+                count = loadSql(new PushbackReader(in));
+            }
+            commit();
+            done = true;
+        } finally {
+            if (!done) {
+                try {
+                    con.rollback();
+                } catch (SQLException sqle) {
+                    // The original problem is more useful
+                }
+            }
+            closeInserts();
+            batched = 0;
+            uncommitted = 0;
+            con.setAutoCommit(autoCommit);
+            elapsed += System.currentTimeMillis() - start;
+        }
+        rows += count;
+        return count;
+    }
+
+    /**
+     * <p>Asks the server to load a CSV file
+     * with <code>LOAD DATA LOCAL INFILE</code>.
+     * This only works with MySQL, and only if both the server
+     * and the driver allow local files.</p>
+     * @param file The file
+     * @return The number of plants loaded
+     * @throws SQLException If the server cannot load the file
+     * @throws IOException If the header row cannot be read
+     */
+    public int loadData(final File file) throws SQLException, IOException {
+        PushbackReader in =
+            new PushbackReader(new BufferedReader(new FileReader(file)));
+        List header;
+        try {
+            header = readColumns(readCsvRecord(in));
+        } finally {
+            in.close();
+        }
+
+        // Read every field into a variable, so that empty ones
+        // can be loaded as NULL
+        StringBuffer variables = new StringBuffer();
+        StringBuffer assignments = new StringBuffer();
+        for (int i = 0; i < header.size(); i++) {
+            if (i > 0) {
+                variables.append(", ");
+                assignments.append(", ");
+            }
+            variables.append("@c").append(i);
+            assignments.append(header.get(i)).append(" = NULLIF(@c")
+                .append(i).append(", '')");
+        }
+        String path = file.getAbsolutePath().replace('\\', '/')
+            .replaceAll("'", "\\\\'");
+        String sql = "LOAD DATA LOCAL INFILE '" + path + "'"
+            + " INTO TABLE plants"
+            + " FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"'"
+            + " ESCAPED BY ''"
+            + " LINES TERMINATED BY '\\n'"
+            + " IGNORE 1 LINES (" + variables + ")"
+            + " SET " + assignments;
+
+        long start = System.currentTimeMillis();
+        int count;
+        Statement stmt = con.createStatement();
+        try {
+            count = stmt.executeUpdate(sql);
+        } finally {
+            stmt.close();
+        }
+        if (!con.getAutoCommit()) {
+            con.commit();
+        }
+        commits++;
+        elapsed += System.currentTimeMillis() - start;
+        rows += count;
+        return count;
+    }
+
+    /**
+     * <p>Returns the number of plants loaded.</p>
+     * @return long
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * <p>Returns the time spent loading, in milliseconds.</p>
+     * @return long
+     */
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    /**
+     * <p>Returns the number of plants loaded per second.</p>
+     * @return double
+     */
+    public double getRowsPerSecond() {
+        if (elapsed == 0) {
+            return 0;
+        }
+        return rows * SECOND / elapsed;
+    }
+
+    /**
+     * <p>Returns why <code>LOAD DATA</code> failed
+     * during the last <code>load()</code> of a file.</p>
+     * @return The reason, or <code>null</code> if it didn't fail
+     * or wasn't tried
+     */
+    public String getLoadDataError() {
+        return loadDataError;
+    }
+
+    /**
+     * <p>Returns a one-line summary of the loader statistics.</p>
+     * @return String
+     */
+    public String toString() {
+        return "BulkLoader[rows=" + rows
+            + ", batches=" + batches
+            + ", commits=" + commits
+            + ", loadDataFallbacks=" + fallbacks
+            + ", ms=" + elapsed
+            + ", rowsPerSecond=" + Math.round(getRowsPerSecond()) + "]";
+    }
+
+    /**
+     * <p>Loads CSV rows.</p>
+     * @param in Where to read the rows
+     * @return The number of rows loaded
+     * @throws SQLException If a row cannot be loaded
+     * @throws IOException If a row cannot be read
+     */
+    private int loadCsv(final PushbackReader in)
+        throws SQLException, IOException {
+        List header = readColumns(readCsvRecord(in));
+        int count = 0;
+        String[] record;
+        while ((record = readCsvRecord(in)) != null) {
+            if (record.length == 1 && record[0] == null) {
+                // A blank line
+                continue;
+            }
+            if (record.length != header.size()) {
+                throw new IOException("Row " + (count + 1) + " has "
+                                      + record.length + " fields, but the "
+                                      + "header has " + header.size());
+            }
+            add(header, record);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * <p>Loads the rows in <code>INSERT</code> statements.</p>
+     * @param in Where to read the statements
+     * @return The number of rows loaded
+     * @throws SQLException If a row cannot be loaded
+     * @throws IOException If a statement cannot be read
+     */
+    private int loadSql(final PushbackReader in)
+        throws SQLException, IOException {
+        int count = 0;
+        String statement;
+        while ((statement = readStatement(in)) != null) {
+            Scanner scanner = new Scanner(statement);
+            if (scanner.atEnd() || scanner.skipWord("USE")) {
+                continue;
+            }
+            if (!scanner.skipWord("INSERT") || !scanner.skipWord("INTO")
+                || !scanner.readName().equalsIgnoreCase("plants")) {
+                throw new IOException("Not an insert into plants: "
+                                      + statement);
+            }
+
+            List names = new ArrayList();
+            scanner.expect('(');
+            do {
+                names.add(scanner.readName());
+            } while (scanner.skip(','));
+            scanner.expect(')');
+            List header = readColumns((String[])
+                names.toArray(new String[names.size()]));
+
+            if (!scanner.skipWord("VALUES")) {
+                throw new IOException("Expected VALUES: " + statement);
+            }
+            do {
+                List values = new ArrayList();
+                scanner.expect('(');
+                do {
+                    values.add(scanner.readValue());
+                } while (scanner.skip(','));
+                scanner.expect(')');
+                if (values.size() != header.size()) {
+                    throw new IOException("Wrong number of values: "
+                                          + statement);
+                }
+                add(header, (String[])
+                    values.toArray(new String[values.size()]));
+                count++;
+            } while (scanner.skip(','));
+            if (!scanner.atEnd()) {
+                throw new IOException("Unexpected text: " + statement);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>Adds a row to the current batch,
+     * sending the batch when it is full
+     * and committing when the transaction is full.</p>
+     * @param header The columns
+     * @param values The values, which may be <code>null</code>
+     * @throws SQLException If the row cannot be added
+     */
+    private void add(final List header, final String[] values)
+        throws SQLException {
+        PreparedStatement insert = (PreparedStatement) inserts.get(header);
+        if (insert == null) {
+            insert = con.prepareStatement(getInsertString(header));
+            inserts.put(header, insert);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                insert.setNull(i + 1, Types.VARCHAR);
+            } else {
+                insert.setString(i + 1, values[i]);
+            }
+        }
+        insert.addBatch();
+        if (!pending.contains(insert)) {
+            pending.add(insert);
+        }
+        batched++;
+        uncommitted++;
+
+        if (batched >= batchSize) {
+            flush();
+        }
+        if (uncommitted >= commitInterval) {
+            commit();
+        }
+    }
+
+    /**
+     * <p>Sends the waiting rows to the database,
+     * as one batch for each set of columns.</p>
+     * @throws SQLException If a batch fails
+     */
+    private void flush() throws SQLException {
+        for (Iterator i = pending.iterator(); i.hasNext();) {
+            ((PreparedStatement) i.next()).executeBatch();
+            batches++;
+        }
+        pending.clear();
+        batched = 0;
+    }
+
+    /**
+     * <p>Sends the current batch and commits the transaction.</p>
+     * @throws SQLException If the batch or the commit fails
+     */
+    private void commit() throws SQLException {
+        flush();
+        if (uncommitted > 0) {
+            con.commit();
+            commits++;
+            uncommitted = 0;
+        }
+    }
+
+    /**
+     * <p>Closes the open inserts.</p>
+     */
+    private void closeInserts() {
+        for (Iterator i = inserts.values().iterator(); i.hasNext();) {
+            try {
+                ((PreparedStatement) i.next()).close();
+            } catch (SQLException sqle) {
+                // The statement is being thrown away anyway
+            }
+        }
+        inserts.clear();
+        pending.clear();
+    }
+
+    /**
+     * <p>Returns the SQL that inserts a row into some columns.</p>
+     * @param header The columns
+     * @return String
+     */
+    private static String getInsertString(final List header) {
+        StringBuffer sql = new StringBuffer("INSERT INTO plants (");
+        StringBuffer parameters = new StringBuffer();
+        for (int i = 0; i < header.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+                parameters.append(", ");
+            }
+            sql.append(header.get(i));
+            parameters.append('?');
+        }
+        return sql.append(") VALUES (").append(parameters).append(')')
+            .toString();
+    }
+
+    /**
+     * <p>Checks that a list of column names are all plant columns,
+     * since they go straight into the SQL.</p>
+     * @param names The column names, or <code>null</code>
+     * @return The names in lower case
+     * @throws IOException If a name isn't a plant column
+     */
+    private static List readColumns(final String[] names)
+        throws IOException {
+        if (names == null) {
+            throw new IOException("There is no header row");
+        }
+        List header = new ArrayList();
+        for (int i = 0; i < names.length; i++) {
+            String name = "";
+            if (names[i] != null) {
+                name = names[i].trim().toLowerCase();
+            }
+            if (!COLUMNS.contains(name)) {
+                throw new IOException("Unknown column: " + names[i]);
+            }
+            header.add(name);
+        }
+        return header;
+    }
+
+    /**
+     * <p>Reads a CSV record, as described in RFC 4180.
+     * Empty fields that aren't quoted are read as <code>null</code>.</p>
+     * @param in Where to read the record
+     * @return The fields, or <code>null</code> at the end of the input
+     * @throws IOException If the record cannot be read
+     */
+    private static String[] readCsvRecord(final PushbackReader in)
+        throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+
+        List fields = new ArrayList();
+        StringBuffer field = new StringBuffer();
+        boolean quoted = false;
+        while (true) {
+            if (c == '"' && field.length() == 0 && !quoted) {
+                quoted = true;
+                // Read up to the closing quote
+                while (true) {
+                    c = in.read();
+                    if (c == -1) {
+                        throw new IOException("A quoted field is not "
+                                              + "closed");
+                    }
+                    if (c == '"') {
+                        c = in.read();
+                        if (c != '"') {
+                            break;
+                        }
+                    }
+                    field.append((char) c);
+                }
+                continue;
+            }
+            if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                if (field.length() == 0 && !quoted) {
+                    fields.add(null);
+                } else {
+                    fields.add(field.toString());
+                }
+                field.setLength(0);
+                quoted = false;
+                if (c == ',') {
+                    c = in.read();
+                    continue;
+                }
+                if (c == '\r') {
+                    int next = in.read();
+                    if (next != '\n' && next != -1) {
+                        in.unread(next);
+                    }
+                }
+                break;
+            }
+            field.append((char) c);
+            c = in.read();
+        }
+        return (String[]) fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * <p>Reads an SQL statement, up to a semicolon
+     * that isn't in a string.
+     * Lines that start with <code>--</code> or <code>#</code>
+     * are skipped.</p>
+     * @param in Where to read the statement
+     * @return The statement, without the semicolon,
+     * or <code>null</code> at the end of the input
+     * @throws IOException If the statement cannot be read
+     */
+    private static String readStatement(final PushbackReader in)
+        throws IOException {
+        StringBuffer statement = new StringBuffer();
+        boolean lineStart = true;
+        char quote = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (quote == 0 && lineStart && (c == '-' || c == '#')) {
+                int next = in.read();
+                if (c == '#' || next == '-') {
+                    // Skip the rest of the comment line
+                    while (next != -1 && next != '\n') {
+                        next = in.read();
+                    }
+                    continue;
+                }
+                if (next != -1) {
+                    in.unread(next);
+                }
+            }
+            lineStart = c == '\n'
+                || (lineStart && Character.isWhitespace((char) c));
+
+            if (quote == 0 && c == ';') {
+                return statement.toString();
+            }
+            statement.append((char) c);
+            if (quote != 0 && c == '\\') {
+                // Keep the escaped character, whatever it is
+                c = in.read();
+                if (c != -1) {
+                    statement.append((char) c);
+                }
+            } else if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = (char) c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+        }
+        if (statement.toString().trim().length() == 0) {
+            return null;
+        }
+        return statement.toString();
+    }
+
+    /**
+     * <p>Loads the files named on the command line
+     * into the database in <code>database.properties</code>.</p>
+     * @param args The command-line arguments.
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there is a problem with the database
+     * @throws IOException If there is a problem reading a file
+     */
+    public static void main(final String[] args)
+        throws ClassNotFoundException, SQLException, IOException {
+
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int commitInterval = DEFAULT_COMMIT_INTERVAL;
+        boolean loadData = false;
+        List files = new ArrayList();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-batch") && i + 1 < args.length) {
+                batchSize = Integer.parseInt(args[++i].trim());
+            } else if (args[i].equals("-commit") && i + 1 < args.length) {
+                commitInterval = Integer.parseInt(args[++i].trim());
+            } else if (args[i].equals("-loaddata")) {
+                loadData = true;
+            } else if (args[i].startsWith("-")) {
+                usage();
+                return;
+            } else if (!args[i].equals("")) {
+                files.add(new File(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            usage();
+            return;
+        }
+
+        PropertiesLoader properties = PropertiesLoader.getInstance();
+        Class.forName(properties.getString("driver.name"));
+        Connection con = DriverManager.getConnection(
+            properties.getString("database.root")
+            + properties.getString("database.name"),
+            properties.getString("database.user", "antBook"),
+            properties.getString("database.password", "antB00k"));
+
+        try {
+            BulkLoader loader = new BulkLoader(con);
+            loader.setBatchSize(batchSize);
+            loader.setCommitInterval(commitInterval);
+            for (int i = 0; i < files.size(); i++) {
+                File file = (File) files.get(i);
+                long start = System.currentTimeMillis();
+                int count = loader.load(file, loadData);
+                long time = System.currentTimeMillis() - start;
+                if (loader.getLoadDataError() != null) {
+                    System.out.println("LOAD DATA failed, so batches were "
+                                       + "used: "
+                                       + loader.getLoadDataError());
+                }
+                System.out.println("Loaded " + count + " plants from "
+                                   + file + " in " + time + "ms");
+            }
+            System.out.println(loader);
+        } finally {
+            con.close();
+        }
+    }
+
+    /**
+     * <p>Prints the usage information.</p>
+     */
+    private static void usage() {
+        System.out.println("Usage: java org.mwrm.plants.BulkLoader "
+                           + "[-batch rows] [-commit rows] [-loaddata] "
+                           + "file...");
+    }
+
+    /**
+     * <p>Reads the parts of an <code>INSERT</code> statement.</p>
+     */
+    private static final class Scanner {
+
+        /** The statement. */
+        private final String text;
+
+        /** The position of the next character to read. */
+        private int pos;
+
+        /**
+         * <p>Creates a scanner.</p>
+         * @param aText The statement
+         */
+        private Scanner(final String aText) {
+            this.text = aText;
+        }
+
+        /**
+         * <p>Checks whether only white space is left.</p>
+         * @return boolean
+         */
+        private boolean atEnd() {
+            skipSpace();
+            return pos >= text.length();
+        }
+
+        /**
+         * <p>Skips a keyword, if it is next.</p>
+         * @param word The keyword
+         * @return Whether the keyword was there
+         */
+        private boolean skipWord(final String word) {
+            skipSpace();
+            int end = pos + word.length();
+            if (text.regionMatches(true, pos, word, 0, word.length())
+                && (end >= text.length()
+                    || !Character.isLetterOrDigit(text.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * <p>Skips a character, if it is next.</p>
+         * @param c The character
+         * @return Whether the character was there
+         */
+        private boolean skip(final char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * <p>Skips a character that must be next.</p>
+         * @param c The character
+         * @throws IOException If the character isn't there
+         */
+        private void expect(final char c) throws IOException {
+            if (!skip(c)) {
+                throw new IOException("Expected '" + c + "' at "
+                                      + pos + ": " + text);
+            }
+        }
+
+        /**
+         * <p>Reads a table or column name,
+         * which may be in back quotes.</p>
+         * @return String
+         */
+        private String readName() {
+            skipSpace();
+            boolean quoted = skip('`');
+            int start = pos;
+            while (pos < text.length()
+                   && (Character.isLetterOrDigit(text.charAt(pos))
+                       || text.charAt(pos) == '_')) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            if (quoted) {
+                skip('`');
+            }
+            return name;
+        }
+
+        /**
+         * <p>Reads a value: a quoted string, <code>NULL</code>,
+         * or a number.</p>
+         * @return The value, or <code>null</code> for <code>NULL</code>
+         * @throws IOException If the value cannot be read
+         */
+        private String readValue() throws IOException {
+            skipSpace();
+            if (pos >= text.length()) {
+                throw new IOException("Expected a value: " + text);
+            }
+            char quote = text.charAt(pos);
+            if (quote == '\'' || quote == '"') {
+                return readString(quote);
+            }
+            if (skipWord("NULL")) {
+                return null;
+            }
+            int start = pos;
+            while (pos < text.length() && text.charAt(pos) != ','
+                   && text.charAt(pos) != ')'
+                   && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IOException("Expected a value at " + pos
+                                      + ": " + text);
+            }
+            return text.substring(start, pos);
+        }
+
+        /**
+         * <p>Reads a quoted string, undoing MySQL's escapes
+         * and doubled quotes.</p>
+         * @param quote The quote character
+         * @return String
+         * @throws IOException If the string isn't closed
+         */
+        private String readString(final char quote) throws IOException {
+            StringBuffer value = new StringBuffer();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '\\' && pos < text.length()) {
+                    value.append(unescape(text.charAt(pos++)));
+                } else if (c == quote) {
+                    if (pos < text.length() && text.charAt(pos) == quote) {
+                        value.append(quote);
+                        pos++;
+                    } else {
+                        return value.toString();
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            throw new IOException("A string is not closed: " + text);
+        }
+
+        /**
+         * <p>Returns the character that an escape stands for.</p>
+         * @param c The character after the backslash
+         * @return char
+         */
+        private static char unescape(final char c) {
+            switch (c) {
+            case '0':
+                return '\0';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return c;
+            }
+        }
+
+        /**
+         * <p>Skips white space.</p>
+         */
+        private void skipSpace() {
+            while (pos < text.length()
+                   && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,656 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * <p>The <code>ConnectionPool</code> class keeps a bounded set
+ * of open JDBC connections to the plant database,
+ * so that clients do not have to open a new connection
+ * for every query.</p>
+ *
+ * <p>The pool is configured from the <code>database.properties</code> file
+ * using the following properties:</p>
+ *
+ * <ul>
+ * <li><code>pool.minSize</code>: The number of idle connections
+ * that are never evicted (default 1). This is only a floor
+ * for eviction: connections are opened when they are first needed,
+ * and the pool never opens any just to reach this number.</li>
+ * <li><code>pool.maxSize</code>: The maximum number of open connections
+ * (default 10)</li>
+ * <li><code>pool.idleTimeout</code>: The number of milliseconds
+ * a connection may stay idle before it is closed (default 300000)</li>
+ * <li><code>pool.borrowTimeout</code>: The number of milliseconds
+ * a client waits for a free connection before giving up
+ * (default 5000)</li>
+ * <li><code>pool.validationQuery</code>: The SQL used to check
+ * an idle connection before handing it out (default
+ * <code>SELECT 1</code>)</li>
+ * <li><code>pool.statementCacheSize</code>: The number of prepared
+ * statements kept open for each connection (default 20)</li>
+ * </ul>
+ *
+ * <p>The pool listens for changes to the properties file and
+ * uses the new settings without a restart. If the database URL,
+ * user or password change, the idle connections are closed
+ * and borrowed ones are closed when they are released,
+ * so that every new connection uses the new settings.</p>
+ *
+ * <p>Clients must give every connection back with
+ * <code>release()</code>, or with <code>invalidate()</code>
+ * if the connection failed while they were using it.</p>
+ */
+
+public final class ConnectionPool {
+
+    /** The default minimum number of connections. */
+    private static final int DEFAULT_MIN_SIZE = 1;
+
+    /** The default maximum number of connections. */
+    private static final int DEFAULT_MAX_SIZE = 10;
+
+    /** The default idle timeout in milliseconds. */
+    private static final long DEFAULT_IDLE_TIMEOUT = 300000;
+
+    /** The default borrow timeout in milliseconds. */
+    private static final long DEFAULT_BORROW_TIMEOUT = 5000;
+
+    /** The default validation query. */
+    private static final String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+
+    /** The default number of cached statements per connection. */
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 20;
+
+    /** The single pool for the application. */
+    private static ConnectionPool instance;
+
+    /** The JDBC URL of the database. */
+    private String url;
+
+    /** The database user. */
+    private String user;
+
+    /** The database password. */
+    private String password;
+
+    /** Counts the changes to the URL, user or password. */
+    private int generation;
+
+    /** The number of idle connections that are never evicted. */
+    private int minSize;
+
+    /** The maximum number of open connections. */
+    private int maxSize;
+
+    /** How long a connection may stay idle. */
+    private long idleTimeout;
+
+    /** How long a client waits for a connection. */
+    private volatile long borrowTimeout;
+
+    /** The SQL used to validate idle connections. */
+    private volatile String validationQuery;
+
+    /** The number of prepared statements cached for each connection. */
+    private int statementCacheSize;
+
+    /** The idle connections, most recently used first. */
+    private final LinkedList idle = new LinkedList();
+
+    /** Every open connection, mapped to its <code>Entry</code>. */
+    private final HashMap entries = new HashMap();
+
+    /** The number of connections that have been borrowed. */
+    private int active;
+
+    /** The number of connections that are being opened. */
+    private int opening;
+
+    /** Whether the pool has been closed. */
+    private boolean closed;
+
+    /** The number of clients waiting for a connection. */
+    private int waiters;
+
+    /** The total number of successful borrows. */
+    private long borrowCount;
+
+    /** The total time spent in <code>borrow()</code>. */
+    private long borrowTime;
+
+    /** The number of borrows that timed out. */
+    private long timeoutCount;
+
+    /**
+     * <p>Creates a pool from the database properties.</p>
+     * @param properties The database properties
+     * @throws ClassNotFoundException If the database driver is not found
+     */
+    private ConnectionPool(final Properties properties)
+        throws ClassNotFoundException {
+        configure(properties);
+    }
+
+    /**
+     * <p>Returns the application's pool, creating it the first time.</p>
+     * @return ConnectionPool
+     * @throws ClassNotFoundException If the database driver is not found
+     */
+    public static synchronized ConnectionPool getInstance()
+        throws ClassNotFoundException {
+        if (instance == null) {
+            PropertiesLoader loader = PropertiesLoader.getInstance();
+            final ConnectionPool pool =
+                new ConnectionPool(loader.loadProperties());
+            loader.addListener(new PropertiesListener() {
+                    public void propertiesChanged(final Properties p) {
+                        try {
+                            pool.configure(p);
+                        } catch (ClassNotFoundException cnfe) {
+                            throw new IllegalStateException(
+                                "Cannot load the database driver: "
+                                + cnfe.getMessage());
+                        }
+                    }
+                });
+            instance = pool;
+        }
+        return instance;
+    }
+
+    /**
+     * <p>Applies the database properties to the pool.
+     * Connections opened with an old URL, user or password
+     * are closed now if they are idle,
+     * or when they are released if they are borrowed.</p>
+     * @param properties The database properties
+     * @throws ClassNotFoundException If the database driver is not found
+     */
+    synchronized void configure(final Properties properties)
+        throws ClassNotFoundException {
+
+        // First load the MySQL JDBC driver
+        Class.forName(properties.getProperty("driver.name"));
+
+        // The datasource
+        String newUrl = properties.getProperty("database.root")
+            + properties.getProperty("database.name");
+        String newUser = properties.getProperty("database.user", "antBook");
+        String newPassword = properties.getProperty("database.password",
+                                                    "antB00k");
+        if (url != null
+            && !(newUrl.equals(url) && newUser.equals(user)
+                 && newPassword.equals(password))) {
+            generation++;
+            closeIdle(0);
+        }
+        url = newUrl;
+        user = newUser;
+        password = newPassword;
+
+        minSize = PropertiesLoader.getInt(properties, "pool.minSize",
+                                          DEFAULT_MIN_SIZE);
+        maxSize = Math.max(1,
+                           PropertiesLoader.getInt(properties, "pool.maxSize",
+                                                   DEFAULT_MAX_SIZE));
+        idleTimeout = PropertiesLoader.getLong(properties, "pool.idleTimeout",
+                                               DEFAULT_IDLE_TIMEOUT);
+        borrowTimeout =
+            PropertiesLoader.getLong(properties, "pool.borrowTimeout",
+                                     DEFAULT_BORROW_TIMEOUT);
+        validationQuery = properties.getProperty("pool.validationQuery",
+                                                 DEFAULT_VALIDATION_QUERY);
+        statementCacheSize =
+            PropertiesLoader.getInt(properties, "pool.statementCacheSize",
+                                    DEFAULT_STATEMENT_CACHE_SIZE);
+
+        // The pool may have shrunk, and waiting clients
+        // may now be able to open a connection
+        closeIdle(maxSize - active);
+        notifyAll();
+    }
+
+    /**
+     * <p>Borrows a connection from the pool.
+     * An idle connection is validated before it is handed out;
+     * if none is idle and the pool is full,
+     * the caller waits for up to <code>pool.borrowTimeout</code>
+     * milliseconds.</p>
+     * @return Connection
+     * @throws SQLException If no connection could be obtained
+     */
+    public Connection borrow() throws SQLException {
+        PropertiesLoader.getInstance().checkForChanges();
+
+        long start = System.currentTimeMillis();
+        long deadline = start + borrowTimeout;
+
+        Connection con = null;
+        while (con == null) {
+            Entry entry = null;
+            boolean create = false;
+
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("The connection pool "
+                                           + "has been closed");
+                }
+                evictIdle();
+                while (idle.isEmpty()
+                       && entries.size() + opening >= maxSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        timeoutCount++;
+                        throw new SQLException("Timed out after "
+                                               + borrowTimeout
+                                               + "ms waiting for a "
+                                               + "database connection");
+                    }
+                    waiters++;
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException ie) {
+                        // Let the caller see that it was interrupted
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting "
+                                               + "for a database connection");
+                    } finally {
+                        waiters--;
+                    }
+                }
+
+                if (idle.isEmpty()) {
+                    // Reserve a slot, so that other threads
+                    // count it while the connection opens
+                    create = true;
+                    opening++;
+                } else {
+                    entry = (Entry) idle.removeFirst();
+                }
+                active++;
+            }
+
+            if (create) {
+                con = open();
+            } else if (isValid(entry.connection)) {
+                con = entry.connection;
+            } else {
+                // The connection has gone stale, so throw it away
+                // and try again
+                discard(entry.connection);
+            }
+        }
+
+        synchronized (this) {
+            borrowCount++;
+            borrowTime += System.currentTimeMillis() - start;
+        }
+        return con;
+    }
+
+    /**
+     * <p>Returns a prepared statement for a borrowed connection.
+     * Each connection keeps its most recently used statements open,
+     * so the database only has to parse and plan a query
+     * the first time a connection runs it.</p>
+     *
+     * <p>The statement belongs to the pool: clients should close
+     * the <code>ResultSet</code> when they are finished with it,
+     * but must not close the statement itself.</p>
+     * @param con A connection borrowed from this pool
+     * @param sql The SQL to prepare
+     * @return PreparedStatement
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public PreparedStatement prepare(final Connection con, final String sql)
+        throws SQLException {
+        Map statements = null;
+        synchronized (this) {
+            Entry entry = (Entry) entries.get(con);
+            if (entry != null) {
+                statements = entry.statements;
+            }
+        }
+
+        // Only the borrower uses a connection's statements,
+        // so the cache itself doesn't need the pool's lock
+        PreparedStatement stmt = null;
+        if (statements != null) {
+            stmt = (PreparedStatement) statements.get(sql);
+        }
+        if (stmt == null) {
+            stmt = con.prepareStatement(sql);
+            if (statements != null) {
+                statements.put(sql, stmt);
+            }
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    /**
+     * <p>Gives a connection back to the pool.</p>
+     * @param con The connection that was borrowed
+     */
+    public void release(final Connection con) {
+        if (con == null) {
+            return;
+        }
+        synchronized (this) {
+            Entry entry = (Entry) entries.get(con);
+            if (entry != null && !closed
+                && entry.generation == generation) {
+                active--;
+                entry.lastUsed = System.currentTimeMillis();
+                idle.addFirst(entry);
+                notify();
+                return;
+            }
+        }
+        // Not one of ours, or the pool has closed, so just close it
+        discard(con);
+    }
+
+    /**
+     * <p>Removes a broken connection from the pool and closes it.</p>
+     * @param con The connection that was borrowed
+     */
+    public void invalidate(final Connection con) {
+        if (con != null) {
+            discard(con);
+        }
+    }
+
+    /**
+     * <p>Closes every idle connection.
+     * Borrowed connections are closed when they are released.</p>
+     */
+    public synchronized void close() {
+        closeIdle(0);
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * <p>Returns the number of connections that are in use.</p>
+     * @return int
+     */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    /**
+     * <p>Returns the number of idle connections.</p>
+     * @return int
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * <p>Returns the number of clients waiting for a connection.</p>
+     * @return int
+     */
+    public synchronized int getWaiterCount() {
+        return waiters;
+    }
+
+    /**
+     * <p>Returns the number of successful borrows.</p>
+     * @return long
+     */
+    public synchronized long getBorrowCount() {
+        return borrowCount;
+    }
+
+    /**
+     * <p>Returns the number of borrows that timed out.</p>
+     * @return long
+     */
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * <p>Returns the average time taken to borrow a connection,
+     * in milliseconds.</p>
+     * @return double
+     */
+    public synchronized double getAverageBorrowTime() {
+        if (borrowCount == 0) {
+            return 0;
+        }
+        return (double) borrowTime / borrowCount;
+    }
+
+    /**
+     * <p>Returns a one-line summary of the pool statistics.</p>
+     * @return String
+     */
+    public synchronized String toString() {
+        return "ConnectionPool[active=" + active
+            + ", idle=" + idle.size()
+            + ", waiters=" + waiters
+            + ", borrows=" + borrowCount
+            + ", timeouts=" + timeoutCount
+            + ", avgBorrowMs=" + getAverageBorrowTime() + "]";
+    }
+
+    /**
+     * <p>Opens a new connection for a slot
+     * that <code>borrow()</code> has reserved.</p>
+     * @return Connection
+     * @throws SQLException If the connection cannot be opened
+     */
+    private Connection open() throws SQLException {
+        String theUrl;
+        String theUser;
+        String thePassword;
+        int theGeneration;
+        synchronized (this) {
+            theUrl = url;
+            theUser = user;
+            thePassword = password;
+            theGeneration = generation;
+        }
+
+        Connection con = null;
+        try {
+            con = DriverManager.getConnection(theUrl, theUser, thePassword);
+        } finally {
+            synchronized (this) {
+                // Swap the reservation for the real connection
+                opening--;
+                if (con == null) {
+                    active--;
+                    notify();
+                } else {
+                    entries.put(con, new Entry(con, statementCacheSize,
+                                               theGeneration));
+                }
+            }
+        }
+        return con;
+    }
+
+    /**
+     * <p>Removes a borrowed connection from the pool and closes it.</p>
+     * @param con The connection
+     */
+    private void discard(final Connection con) {
+        synchronized (this) {
+            if (entries.remove(con) != null) {
+                active--;
+            }
+            notify();
+        }
+        closeQuietly(con);
+    }
+
+    /**
+     * <p>Closes connections that have been idle for longer
+     * than <code>pool.idleTimeout</code>,
+     * while keeping at least <code>pool.minSize</code> of them.
+     * The caller must hold the pool's lock.</p>
+     */
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeout;
+
+        // The least recently used connections are at the end
+        while (idle.size() > minSize
+               && ((Entry) idle.getLast()).lastUsed < cutoff) {
+            Entry entry = (Entry) idle.removeLast();
+            entries.remove(entry.connection);
+            closeQuietly(entry.connection);
+        }
+    }
+
+    /**
+     * <p>Closes idle connections, least recently used first,
+     * until no more than the given number are left.
+     * The caller must hold the pool's lock.</p>
+     * @param keep The number of idle connections to keep
+     */
+    private void closeIdle(final int keep) {
+        while (idle.size() > Math.max(0, keep)) {
+            Entry entry = (Entry) idle.removeLast();
+            entries.remove(entry.connection);
+            closeQuietly(entry.connection);
+        }
+    }
+
+    /**
+     * <p>Checks that an idle connection still works.</p>
+     * @param con The connection
+     * @return boolean
+     */
+    private boolean isValid(final Connection con) {
+        Statement stmt = null;
+        try {
+            if (con.isClosed()) {
+                return false;
+            }
+            stmt = con.createStatement();
+            stmt.execute(validationQuery);
+            return true;
+        } catch (SQLException sqle) {
+            return false;
+        } finally {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException sqle) {
+                    // Nothing more we can do
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Closes a connection, ignoring any errors.</p>
+     * @param con The connection
+     */
+    private static void closeQuietly(final Connection con) {
+        try {
+            con.close();
+        } catch (SQLException sqle) {
+            // The connection is being thrown away anyway
+        }
+    }
+
+    /**
+     * <p>The pool's bookkeeping for an open connection.</p>
+     */
+    private static final class Entry {
+
+        /** The connection. */
+        private final Connection connection;
+
+        /** When the connection was last released. */
+        private long lastUsed;
+
+        /** The connection's prepared statements, keyed on their SQL. */
+        private final Map statements;
+
+        /** The pool's generation when the connection was opened. */
+        private final int generation;
+
+        /**
+         * <p>Creates an entry for a newly opened connection.</p>
+         * @param con The connection
+         * @param cacheSize The number of statements to keep open
+         * @param theGeneration The pool's generation
+         */
+        private Entry(final Connection con, final int cacheSize,
+                      final int theGeneration) {
+            this.connection = con;
+            this.generation = theGeneration;
+            this.lastUsed = System.currentTimeMillis();
+            this.statements = new StatementCache(cacheSize);
+        }
+    }
+
+    /**
+     * <p>A least-recently-used cache of prepared statements,
+     * which closes the statements that it evicts.</p>
+     */
+    private static final class StatementCache extends LinkedHashMap {
+
+        /** The maximum number of statements. */
+        private final int maxSize;
+
+        /**
+         * <p>Creates an empty cache.</p>
+         * @param size The maximum number of statements
+         */
+        private StatementCache(final int size) {
+            super(size + 1, 1.0f, true);
+            this.maxSize = size;
+        }
+
+        /**
+         * <p>Closes and removes the least recently used statement
+         * once the cache is full.</p>
+         * @param eldest The least recently used entry
+         * @return boolean
+         */
+        protected boolean removeEldestEntry(final Map.Entry eldest) {
+            if (size() <= maxSize) {
+                return false;
+            }
+            try {
+                ((Statement) eldest.getValue()).close();
+            } catch (SQLException sqle) {
+                // The statement is being thrown away anyway
+            }
+            return true;
+        }
+    }
+}
@@ -17,8 +17,8 @@
 package org.mwrm.plants;
 
 /**
- * The <code>Constants</code> class contains four constants
- * that represent sort options.
+ * The <code>Constants</code> class contains the constants
+ * that represent sort and search options.
  *
  */
 
@@ -39,6 +39,18 @@ public class Constants {
      */
     public static final int SORT_BY_CHOSEN_LETTER = 4;
 
+    /**
+     * Use to find the plants that match a keyword search,
+     * best match first.
+     */
+    public static final int SEARCH_BY_KEYWORD = 5;
+
+    /**
+     * Use to sort the plants by their botanical name
+     * and exclude those plants that are not in the chosen family.
+     */
+    public static final int SORT_BY_CHOSEN_FAMILY = 6;
+
     /**
      * A simple constructor.
      */
@@ -0,0 +1,73 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.Serializable;
+
+/**
+ * <p>The <code>Facet</code> class holds one value of a column,
+ * such as a family, and the number of plants that have it,
+ * so that clients can offer a list of values to drill down into
+ * without loading the plants themselves.</p>
+ *
+ * <p>The getters follow the JavaBeans conventions,
+ * so JSP pages can use expressions such as
+ * <code>${facet.count}</code>.</p>
+ */
+
+public final class Facet implements Serializable {
+
+    /** The value of the column. */
+    private final String value;
+
+    /** The number of plants with the value. */
+    private final int count;
+
+    /**
+     * <p>Creates a facet.</p>
+     * @param aValue The value of the column
+     * @param aCount The number of plants with the value
+     */
+    public Facet(final String aValue, final int aCount) {
+        this.value = aValue;
+        this.count = aCount;
+    }
+
+    /**
+     * <p>Returns the value of the column.</p>
+     * @return String
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * <p>Returns the number of plants with the value.</p>
+     * @return int
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * <p>Returns the value and the count, for debugging.</p>
+     * @return String
+     */
+    public String toString() {
+        return value + " (" + count + ")";
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * <p>The <code>PageToken</code> class marks a place
+ * in one of the sort orders, so that <code>SelectData</code>
+ * can fetch the page before or after it
+ * by seeking on the sort columns rather than counting rows.</p>
+ *
+ * <p>A token holds the sort choice, the direction,
+ * the values of the sort columns and the <code>id</code> of the plant
+ * at the edge of the page. It is written as a hexadecimal string,
+ * so it can go in a URL as it is.</p>
+ */
+
+final class PageToken {
+
+    /** The direction code for the page after a plant. */
+    private static final char AFTER = 'a';
+
+    /** The direction code for the page before a plant. */
+    private static final char BEFORE = 'b';
+
+    /** Marks a column value that is <code>null</code>. */
+    private static final char NULL_VALUE = '~';
+
+    /** The hexadecimal digits. */
+    private static final String HEX = "0123456789abcdef";
+
+    /** The sort choice from the <code>Constants</code> class. */
+    private final int choice;
+
+    /** Whether the page comes after the plant, rather than before it. */
+    private final boolean forward;
+
+    /**
+     * The values of the sort columns, apart from <code>id</code>,
+     * or <code>null</code> for the very start or end of the order.
+     */
+    private final String[] keys;
+
+    /** The <code>id</code> of the plant. */
+    private final int id;
+
+    /**
+     * <p>Creates a token.</p>
+     * @param aChoice The sort choice
+     * @param isForward Whether the page comes after the plant
+     * @param theKeys The values of the sort columns, or <code>null</code>
+     * @param anId The <code>id</code> of the plant
+     */
+    private PageToken(final int aChoice, final boolean isForward,
+                      final String[] theKeys, final int anId) {
+        this.choice = aChoice;
+        this.forward = isForward;
+        this.keys = theKeys;
+        this.id = anId;
+    }
+
+    /**
+     * <p>Returns a token for the first page of a sort order.</p>
+     * @param choice The sort choice
+     * @return PageToken
+     */
+    static PageToken first(final int choice) {
+        return new PageToken(choice, true, null, 0);
+    }
+
+    /**
+     * <p>Returns a token for the last page of a sort order.</p>
+     * @param choice The sort choice
+     * @return PageToken
+     */
+    static PageToken last(final int choice) {
+        return new PageToken(choice, false, null, 0);
+    }
+
+    /**
+     * <p>Returns a token for the page after a plant.</p>
+     * @param choice The sort choice
+     * @param plant The last plant on the current page
+     * @return PageToken
+     */
+    static PageToken after(final int choice, final Plant plant) {
+        return new PageToken(choice, true, getKeys(choice, plant),
+                             plant.getId());
+    }
+
+    /**
+     * <p>Returns a token for the page before a plant.</p>
+     * @param choice The sort choice
+     * @param plant The first plant on the current page
+     * @return PageToken
+     */
+    static PageToken before(final int choice, final Plant plant) {
+        return new PageToken(choice, false, getKeys(choice, plant),
+                             plant.getId());
+    }
+
+    /**
+     * <p>Returns the names of the columns that a sort choice orders by,
+     * ending with <code>id</code>.</p>
+     * @param choice The sort choice
+     * @return String[]
+     */
+    static String[] getColumns(final int choice) {
+        if (choice == Constants.SORT_BY_COMMON_NAME) {
+            return new String[] {"common_name", "id"};
+        } else if (choice == Constants.SORT_BY_FAMILY) {
+            return new String[] {"family", "name", "id"};
+        }
+        return new String[] {"name", "id"};
+    }
+
+    /**
+     * <p>Returns a plant's values for the columns
+     * that a sort choice orders by, apart from <code>id</code>.</p>
+     * @param choice The sort choice
+     * @param plant The plant
+     * @return String[]
+     */
+    private static String[] getKeys(final int choice, final Plant plant) {
+        if (choice == Constants.SORT_BY_COMMON_NAME) {
+            return new String[] {plant.getCommonName()};
+        } else if (choice == Constants.SORT_BY_FAMILY) {
+            return new String[] {plant.getFamily(), plant.getName()};
+        }
+        return new String[] {plant.getName()};
+    }
+
+    /**
+     * <p>Returns the sort choice.</p>
+     * @return int
+     */
+    int getChoice() {
+        return choice;
+    }
+
+    /**
+     * <p>Checks whether the page comes after the token's place.</p>
+     * @return boolean
+     */
+    boolean isForward() {
+        return forward;
+    }
+
+    /**
+     * <p>Checks whether the token is for the very start
+     * or the very end of the sort order.</p>
+     * @return boolean
+     */
+    boolean isEdge() {
+        return keys == null;
+    }
+
+    /**
+     * <p>Returns the values of the sort columns, ending with the
+     * <code>id</code> as an <code>Integer</code>.</p>
+     * @return Object[]
+     */
+    Object[] getValues() {
+        Object[] values = new Object[keys.length + 1];
+        System.arraycopy(keys, 0, values, 0, keys.length);
+        values[keys.length] = new Integer(id);
+        return values;
+    }
+
+    /**
+     * <p>Writes the token as a string that is safe to put in a URL.</p>
+     * @return String
+     */
+    String encode() {
+        StringBuffer text = new StringBuffer();
+        text.append(choice).append(forward ? AFTER : BEFORE).append(id);
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                text.append(':');
+                if (keys[i] == null) {
+                    text.append(NULL_VALUE);
+                } else {
+                    // The length means values can contain anything
+                    text.append(keys[i].length()).append('.').append(keys[i]);
+                }
+            }
+        }
+
+        byte[] bytes;
+        try {
+            bytes = text.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+
+        StringBuffer hex = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(HEX.charAt((bytes[i] >> 4) & 0xf));
+            hex.append(HEX.charAt(bytes[i] & 0xf));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * <p>Reads a token written by <code>encode()</code>.</p>
+     * @param token The string
+     * @return PageToken
+     * @throws IllegalArgumentException If the string is not a valid token
+     */
+    static PageToken decode(final String token) {
+        if (token.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+
+        byte[] bytes = new byte[token.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = HEX.indexOf(token.charAt(i * 2));
+            int low = HEX.indexOf(token.charAt(i * 2 + 1));
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        String text;
+        try {
+            text = new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException("UTF-8 is not supported");
+        }
+
+        try {
+            // The choice is a single digit
+            int aChoice = Character.digit(text.charAt(0), 10);
+            char direction = text.charAt(1);
+            if (aChoice < 0 || (direction != AFTER && direction != BEFORE)) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+
+            int pos = text.indexOf(':', 2);
+            if (pos < 0) {
+                // There are no keys, so this is the start or the end
+                return new PageToken(aChoice, direction == AFTER, null,
+                                     Integer.parseInt(text.substring(2)));
+            }
+            int anId = Integer.parseInt(text.substring(2, pos));
+
+            String[] theKeys = new String[getColumns(aChoice).length - 1];
+            for (int i = 0; i < theKeys.length; i++) {
+                if (text.charAt(pos) != ':') {
+                    throw new IllegalArgumentException("Invalid page token");
+                }
+                pos++;
+                if (text.charAt(pos) == NULL_VALUE) {
+                    theKeys[i] = null;
+                    pos++;
+                } else {
+                    int dot = text.indexOf('.', pos);
+                    int length = Integer.parseInt(text.substring(pos, dot));
+                    theKeys[i] = text.substring(dot + 1, dot + 1 + length);
+                    pos = dot + 1 + length;
+                }
+            }
+            if (pos != text.length()) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+            return new PageToken(aChoice, direction == AFTER, theKeys, anId);
+
+        } catch (IndexOutOfBoundsException ioobe) {
+            throw new IllegalArgumentException("Invalid page token");
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+    }
+}
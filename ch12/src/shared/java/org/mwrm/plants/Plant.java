@@ -0,0 +1,206 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.Serializable;
+
+import java.util.HashMap;
+
+/**
+ * <p>The <code>Plant</code> class holds one row
+ * of the <code>plants</code> table.
+ * Instances are immutable, so they can be shared
+ * between requests and threads.</p>
+ *
+ * <p>The getters follow the JavaBeans conventions,
+ * so JSP pages can use expressions such as
+ * <code>${plant.commonName}</code>.</p>
+ */
+
+public final class Plant implements Serializable {
+
+    /** The primary key. */
+    private final int id;
+
+    /** The botanical name. */
+    private final String name;
+
+    /** The common name, which may be <code>null</code>. */
+    private final String commonName;
+
+    /** The family name. */
+    private final String family;
+
+    /** The description. */
+    private final String description;
+
+    /** The image file name, which may be <code>null</code>. */
+    private final String image;
+
+    /** The cultivar name, which may be <code>null</code>. */
+    private final String cultivarName;
+
+    /**
+     * <p>Creates a plant.</p>
+     * @param anId The primary key
+     * @param aName The botanical name
+     * @param aCommonName The common name
+     * @param aFamily The family name
+     * @param aDescription The description
+     * @param anImage The image file name
+     * @param aCultivarName The cultivar name
+     */
+    public Plant(final int anId, final String aName, final String aCommonName,
+                 final String aFamily, final String aDescription,
+                 final String anImage, final String aCultivarName) {
+        this.id = anId;
+        this.name = aName;
+        this.commonName = aCommonName;
+        this.family = aFamily;
+        this.description = aDescription;
+        this.image = anImage;
+        this.cultivarName = aCultivarName;
+    }
+
+    /**
+     * <p>Returns the primary key.</p>
+     * @return int
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * <p>Returns the botanical name.</p>
+     * @return String
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * <p>Returns the common name.</p>
+     * @return String
+     */
+    public String getCommonName() {
+        return commonName;
+    }
+
+    /**
+     * <p>Returns the family name.</p>
+     * @return String
+     */
+    public String getFamily() {
+        return family;
+    }
+
+    /**
+     * <p>Returns the description.</p>
+     * @return String
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * <p>Returns the image file name.</p>
+     * @return String
+     */
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * <p>Returns the cultivar name.</p>
+     * @return String
+     */
+    public String getCultivarName() {
+        return cultivarName;
+    }
+
+    /**
+     * <p>Returns the plant as a <code>HashMap</code>
+     * keyed on the column names of the <code>plants</code> table,
+     * which is how <code>SelectData.getData()</code> returns records.</p>
+     * @return HashMap
+     */
+    public HashMap toMap() {
+        HashMap record = new HashMap();
+        record.put("id", String.valueOf(id));
+        record.put("name", name);
+        record.put("common_name", commonName);
+        record.put("family", family);
+        record.put("description", description);
+        record.put("image", image);
+        record.put("cultivar_name", cultivarName);
+        return record;
+    }
+
+    /**
+     * <p>Two plants are equal if all their columns are equal.</p>
+     * @param o The object to compare
+     * @return boolean
+     */
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Plant)) {
+            return false;
+        }
+        Plant other = (Plant) o;
+        return id == other.id
+            && equal(name, other.name)
+            && equal(commonName, other.commonName)
+            && equal(family, other.family)
+            && equal(description, other.description)
+            && equal(image, other.image)
+            && equal(cultivarName, other.cultivarName);
+    }
+
+    /**
+     * <p>The hash code is the primary key.</p>
+     * @return int
+     */
+    public int hashCode() {
+        return id;
+    }
+
+    /**
+     * <p>Returns the botanical name and the cultivar name, if any.</p>
+     * @return String
+     */
+    public String toString() {
+        if (cultivarName == null) {
+            return name;
+        }
+        return name + " '" + cultivarName + "'";
+    }
+
+    /**
+     * <p>Compares two strings, either of which may be <code>null</code>.</p>
+     * @param a The first string
+     * @param b The second string
+     * @return boolean
+     */
+    private static boolean equal(final String a, final String b) {
+        if (a == null) {
+            return b == null;
+        }
+        return a.equals(b);
+    }
+}
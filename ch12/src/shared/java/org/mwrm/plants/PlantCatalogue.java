@@ -0,0 +1,441 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.sql.SQLException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * <p>The <code>PlantCatalogue</code> class keeps a copy
+ * of the <code>plants</code> table in memory.
+ * It loads the whole table with one query
+ * and then answers every sort order, letter and family search,
+ * and the number of plants for each letter and family, from that copy,
+ * in the same order as <code>SelectData</code>.
+ * Each copy is held in a <code>PlantIndex</code>,
+ * which works out the sort orders once, when the copy is loaded.</p>
+ *
+ * <p>The copy is reloaded once it is older than the number of milliseconds
+ * in the <code>catalogue.ttl</code> property
+ * (default 600000, or ten minutes),
+ * or after a call to <code>invalidate()</code>.
+ * While one thread reloads the table,
+ * other threads carry on using the old copy.</p>
+ *
+ * <p>The catalogue also keeps a version stamp, the time at which
+ * the plants last changed, which clients can use to tell whether
+ * anything they built from the catalogue is still current.
+ * Reloading a table that hasn't changed keeps the old stamp.</p>
+ *
+ * <p>The catalogue keeps a <code>SearchIndex</code> of the words
+ * in each plant, for keyword searches. Each reload only indexes
+ * the plants that were added or changed.
+ * It also keeps a <code>PrefixIndex</code> of the botanical
+ * and common names, for type-ahead completion,
+ * which is rebuilt whenever the plants change.</p>
+ */
+
+public final class PlantCatalogue {
+
+    /** The default time to live in milliseconds. */
+    private static final long DEFAULT_TTL = 600000;
+
+    /** The single catalogue for the application. */
+    private static PlantCatalogue instance;
+
+    /** How long a copy of the table is used, in milliseconds. */
+    private long ttl;
+
+    /** The current copy of the table, or <code>null</code>. */
+    private Snapshot snapshot;
+
+    /** The words in each plant, for keyword searches. */
+    private final SearchIndex searchIndex = new SearchIndex();
+
+    /** The last copy that was thrown away, or <code>null</code>. */
+    private Snapshot previous;
+
+    /** Whether a thread is reloading the table. */
+    private boolean loading;
+
+    /** The number of requests answered from a current copy. */
+    private long hits;
+
+    /** The number of requests that found no current copy. */
+    private long misses;
+
+    /** The number of times the table has been loaded. */
+    private long loads;
+
+    /** How long the last load took, in milliseconds. */
+    private long lastLoadTime;
+
+    /** How long all the loads took, in milliseconds. */
+    private long totalLoadTime;
+
+    /**
+     * <p>Creates an empty catalogue.</p>
+     * @param aTtl How long a copy of the table is used, in milliseconds
+     */
+    private PlantCatalogue(final long aTtl) {
+        this.ttl = aTtl;
+    }
+
+    /**
+     * <p>Returns the application's catalogue, creating it the first time.
+     * The table is not loaded until it is first needed.</p>
+     * @return PlantCatalogue
+     */
+    public static synchronized PlantCatalogue getInstance() {
+        if (instance == null) {
+            PropertiesLoader loader = PropertiesLoader.getInstance();
+            final PlantCatalogue catalogue =
+                new PlantCatalogue(loader.getLong("catalogue.ttl",
+                                                  DEFAULT_TTL));
+            loader.addListener(new PropertiesListener() {
+                    public void propertiesChanged(final Properties p) {
+                        catalogue.setTtl(PropertiesLoader.getLong(
+                            p, "catalogue.ttl", DEFAULT_TTL));
+                    }
+                });
+            instance = catalogue;
+        }
+        return instance;
+    }
+
+    /**
+     * <p>Changes how long a copy of the table is used.
+     * The current copy is kept until it is older than the new time.</p>
+     * @param aTtl The time to live, in milliseconds
+     */
+    synchronized void setTtl(final long aTtl) {
+        this.ttl = aTtl;
+    }
+
+    /**
+     * <p>Gets the plants from the catalogue,
+     * in the same order as <code>SelectData.getPlants()</code>.</p>
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @return A read-only <code>List</code> of <code>Plant</code> objects,
+     * which shares the catalogue's arrays
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public List getPlants(final int choice, final String letter)
+        throws ClassNotFoundException, SQLException {
+
+        return getSnapshot().index.getPlants(choice, letter);
+    }
+
+    /**
+     * <p>Gets one page of plants from the catalogue,
+     * in the same order as <code>SelectData.getPlants()</code>.</p>
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @param start The position of the first result, starting at 0
+     * @param count The maximum number of results
+     * @return A read-only <code>List</code> of <code>Plant</code> objects,
+     * which shares the catalogue's arrays
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public List getPlants(final int choice, final String letter,
+                          final int start, final int count)
+        throws ClassNotFoundException, SQLException {
+
+        List plants = getPlants(choice, letter);
+        int from = Math.min(Math.max(start, 0), plants.size());
+        int to = Math.min(from + Math.max(count, 0), plants.size());
+        return plants.subList(from, to);
+    }
+
+    /**
+     * <p>Finds the plants that match every word in a query,
+     * best match first.
+     * Each query word also matches words that begin with it.</p>
+     * @param query The words to look for
+     * @return A <code>List</code> of <code>Plant</code> objects
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public List search(final String query)
+        throws ClassNotFoundException, SQLException {
+
+        // Make sure the index is up to date
+        getSnapshot();
+        return searchIndex.search(query);
+    }
+
+    /**
+     * <p>Completes the beginning of a botanical or common name.</p>
+     * @param prefix The beginning of a name, in any case
+     * @param limit The most names to return
+     * @return A <code>List</code> of <code>String</code> names,
+     * in alphabetical order
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public List complete(final String prefix, final int limit)
+        throws ClassNotFoundException, SQLException {
+
+        return getSnapshot().prefixes.complete(prefix, limit);
+    }
+
+    /**
+     * <p>Counts the plants whose botanical name begins with each letter,
+     * without searching.</p>
+     * @return An array of 26 counts; entry <code>i</code>
+     * is for the letter <code>'a' + i</code>
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public int[] getLetterCounts()
+        throws ClassNotFoundException, SQLException {
+
+        return getSnapshot().index.getLetterCounts();
+    }
+
+    /**
+     * <p>Counts the plants in each family, without searching.
+     * The counts are worked out when the table is loaded.</p>
+     * @return A read-only <code>List</code> of <code>Facet</code> objects,
+     * in family order
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public List getFamilies()
+        throws ClassNotFoundException, SQLException {
+
+        return getSnapshot().index.getFamilies();
+    }
+
+    /**
+     * <p>Gets a plant from the catalogue by its <code>id</code>,
+     * without searching.</p>
+     * @param id The plant's <code>id</code>
+     * @return The plant, or <code>null</code> if there is no such plant
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public Plant getPlant(final int id)
+        throws ClassNotFoundException, SQLException {
+
+        return getSnapshot().index.getPlant(id);
+    }
+
+    /**
+     * <p>Returns the time at which the plants last changed,
+     * loading the table if necessary.
+     * This is the time of the first load that found
+     * the current set of plants.</p>
+     * @return The time in milliseconds
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table has to be loaded and cannot be
+     */
+    public long getLastModified()
+        throws ClassNotFoundException, SQLException {
+
+        return getSnapshot().modified;
+    }
+
+    /**
+     * <p>Throws away the current copy of the table,
+     * so that the next request loads it again.</p>
+     */
+    public synchronized void invalidate() {
+        if (snapshot != null) {
+            // Keep the version stamp, in case the plants haven't changed
+            previous = snapshot;
+        }
+        snapshot = null;
+    }
+
+    /**
+     * <p>Returns the number of requests answered from a current copy.</p>
+     * @return long
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * <p>Returns the number of requests that found no current copy.</p>
+     * @return long
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * <p>Returns the number of times the table has been loaded.</p>
+     * @return long
+     */
+    public synchronized long getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * <p>Returns how long the last load took, in milliseconds.</p>
+     * @return long
+     */
+    public synchronized long getLastLoadTime() {
+        return lastLoadTime;
+    }
+
+    /**
+     * <p>Returns how long all the loads took, in milliseconds.</p>
+     * @return long
+     */
+    public synchronized long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * <p>Returns a one-line summary of the catalogue statistics.</p>
+     * @return String
+     */
+    public synchronized String toString() {
+        return "PlantCatalogue[hits=" + hits
+            + ", misses=" + misses
+            + ", loads=" + loads
+            + ", lastLoadMs=" + lastLoadTime
+            + ", totalLoadMs=" + totalLoadTime
+            + ", searchWords=" + searchIndex.getWordCount()
+            + ", searchUpdates=" + searchIndex.getUpdateCount() + "]";
+    }
+
+    /**
+     * <p>Returns a current copy of the table, loading it if necessary.
+     * If the copy has merely expired and another thread is already
+     * reloading it, the old copy is returned.</p>
+     * @return Snapshot
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If the table cannot be loaded
+     */
+    private Snapshot getSnapshot()
+        throws ClassNotFoundException, SQLException {
+
+        Snapshot current;
+        // The copy that the new one replaces
+        Snapshot old;
+        synchronized (this) {
+            current = snapshot;
+            boolean expired = current == null
+                || System.currentTimeMillis() - current.loaded >= ttl;
+
+            if (!expired) {
+                hits++;
+                return current;
+            }
+
+            misses++;
+            if (loading) {
+                if (current != null) {
+                    // Someone else is reloading, so use the old copy
+                    return current;
+                }
+                // There's nothing to use, so wait for the load
+                while (loading) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        throw new SQLException("Interrupted while waiting "
+                                               + "for the plant catalogue");
+                    }
+                }
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            }
+            loading = true;
+            old = current != null ? current : previous;
+        }
+
+        Snapshot loaded = null;
+        long start = System.currentTimeMillis();
+        try {
+            List plants = SelectData.getPlants(Constants.SORT_BY_NAME, null);
+            // Work out every sort order now, so requests don't have to
+            loaded = new Snapshot((Plant[]) plants.toArray(new Plant[0]),
+                                  old);
+            // Only the plants that have changed are indexed again
+            searchIndex.update(loaded.plants);
+        } finally {
+            synchronized (this) {
+                loading = false;
+                if (loaded != null) {
+                    snapshot = loaded;
+                    previous = null;
+                    loads++;
+                    lastLoadTime = System.currentTimeMillis() - start;
+                    totalLoadTime += lastLoadTime;
+                }
+                notifyAll();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * <p>A copy of the table at a point in time.</p>
+     */
+    private static final class Snapshot {
+
+        /** The plants, in the order they were loaded. */
+        private final Plant[] plants;
+
+        /** The plants and their sort orders. */
+        private final PlantIndex index;
+
+        /** When the copy was loaded. */
+        private final long loaded;
+
+        /** When the plants last changed. */
+        private final long modified;
+
+        /** The botanical and common names, for completion. */
+        private final PrefixIndex prefixes;
+
+        /**
+         * <p>Creates a copy of the table.</p>
+         * @param thePlants The plants
+         * @param old The copy that this one replaces, or <code>null</code>
+         */
+        private Snapshot(final Plant[] thePlants, final Snapshot old) {
+            this.plants = thePlants;
+            this.index = new PlantIndex(thePlants);
+            this.loaded = System.currentTimeMillis();
+
+            if (old != null && Arrays.equals(old.plants, thePlants)) {
+                // Nothing has changed, so the names are the same
+                this.modified = old.modified;
+                this.prefixes = old.prefixes;
+            } else {
+                this.modified = loaded;
+                this.prefixes = new PrefixIndex(thePlants);
+            }
+        }
+    }
+}
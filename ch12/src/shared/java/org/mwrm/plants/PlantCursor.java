@@ -0,0 +1,157 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * <p>The <code>PlantCursor</code> class reads the results of a query
+ * one plant at a time, as the database sends them,
+ * instead of collecting them all first.
+ * It is returned by <code>SelectData.openCursor()</code>.</p>
+ *
+ * <p>A cursor holds a pooled connection until it is closed,
+ * so clients must always call <code>close()</code>,
+ * usually in a <code>finally</code> block:</p>
+ *
+ * <pre>
+ * PlantCursor cursor = SelectData.openCursor(choice, letter);
+ * try {
+ *     while (cursor.next()) {
+ *         Plant plant = cursor.getPlant();
+ *         ...
+ *     }
+ * } finally {
+ *     cursor.close();
+ * }
+ * </pre>
+ */
+
+public final class PlantCursor {
+
+    /** The pool that the connection came from. */
+    private final ConnectionPool pool;
+
+    /** The borrowed connection. */
+    private final Connection connection;
+
+    /** The statement, which belongs to this cursor alone. */
+    private final PreparedStatement statement;
+
+    /** The results. */
+    private final ResultSet results;
+
+    /** The positions of the plant columns. */
+    private final int[] columns;
+
+    /** The current plant, or <code>null</code>. */
+    private Plant plant;
+
+    /** Whether a query failed, so the connection should not be reused. */
+    private boolean failed;
+
+    /** Whether the cursor has been closed. */
+    private boolean closed;
+
+    /**
+     * <p>Creates a cursor over a query that has been run.</p>
+     * @param aPool The pool that the connection came from
+     * @param con The borrowed connection
+     * @param stmt The statement
+     * @param rs The results
+     * @throws SQLException If the columns cannot be found
+     */
+    PlantCursor(final ConnectionPool aPool, final Connection con,
+                final PreparedStatement stmt, final ResultSet rs)
+        throws SQLException {
+        this.pool = aPool;
+        this.connection = con;
+        this.statement = stmt;
+        this.results = rs;
+        this.columns = SelectData.findColumns(rs);
+    }
+
+    /**
+     * <p>Moves to the next plant.</p>
+     * @return <code>false</code> if there are no more plants
+     * @throws SQLException If the next plant cannot be read
+     */
+    public boolean next() throws SQLException {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (results.next()) {
+                plant = SelectData.readPlant(results, columns);
+                return true;
+            }
+        } catch (SQLException sqle) {
+            failed = true;
+            throw sqle;
+        }
+        plant = null;
+        return false;
+    }
+
+    /**
+     * <p>Returns the current plant.</p>
+     * @return Plant
+     * @throws IllegalStateException If <code>next()</code> has not
+     * returned <code>true</code>
+     */
+    public Plant getPlant() {
+        if (plant == null) {
+            throw new IllegalStateException("There is no current plant");
+        }
+        return plant;
+    }
+
+    /**
+     * <p>Closes the results and gives the connection back to the pool.
+     * Closing a cursor more than once does nothing.</p>
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        plant = null;
+
+        // Close each on its own, so the statement is closed
+        // even if the results can't be
+        try {
+            results.close();
+        } catch (SQLException sqle) {
+            failed = true;
+        }
+        try {
+            statement.close();
+        } catch (SQLException sqle) {
+            failed = true;
+        }
+
+        if (failed) {
+            // The connection may be broken, so don't reuse it
+            pool.invalidate(connection);
+        } else {
+            pool.release(connection);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.sql.SQLException;
+
+/**
+ * <p>The <code>PlantExporter</code> class writes plants
+ * in machine-readable formats:</p>
+ *
+ * <ul>
+ * <li><code>CSV</code>: Comma-separated values with a header row,
+ * quoted as described in RFC 4180</li>
+ * <li><code>JSON_LINES</code>: One JSON object per line</li>
+ * </ul>
+ *
+ * <p>It writes straight to a <code>Writer</code>,
+ * which should be buffered, and never holds more than one plant.</p>
+ */
+
+public final class PlantExporter {
+
+    /** Comma-separated values. */
+    public static final int CSV = 1;
+
+    /** One JSON object per line. */
+    public static final int JSON_LINES = 2;
+
+    /** The column names, in the order they are written. */
+    private static final String[] COLUMNS = {
+        "id", "name", "common_name", "family",
+        "description", "image", "cultivar_name"
+    };
+
+    /** The hexadecimal digits. */
+    private static final String HEX = "0123456789abcdef";
+
+    /**
+     * <p>A private constructor.</p>
+     */
+    private PlantExporter() { }
+
+    /**
+     * <p>Writes every plant from a cursor.
+     * The cursor is not closed.</p>
+     * @param cursor The cursor
+     * @param out Where to write the plants
+     * @param format <code>CSV</code> or <code>JSON_LINES</code>
+     * @return The number of plants written
+     * @throws SQLException If a plant cannot be read
+     * @throws IOException If a plant cannot be written
+     */
+    public static int export(final PlantCursor cursor, final Writer out,
+                             final int format)
+        throws SQLException, IOException {
+
+        if (format == CSV) {
+            writeCsvHeader(out);
+        }
+
+        int count = 0;
+        while (cursor.next()) {
+            if (format == CSV) {
+                writeCsv(out, cursor.getPlant());
+            } else {
+                writeJson(out, cursor.getPlant());
+            }
+            out.write('\n');
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * <p>Writes the CSV header row, including its line break.</p>
+     * @param out Where to write the row
+     * @throws IOException If the row cannot be written
+     */
+    public static void writeCsvHeader(final Writer out) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(COLUMNS[i]);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * <p>Writes a plant as a CSV row, without a line break.
+     * <code>null</code> values are written as empty fields.</p>
+     * @param out Where to write the row
+     * @param plant The plant
+     * @throws IOException If the row cannot be written
+     */
+    public static void writeCsv(final Writer out, final Plant plant)
+        throws IOException {
+        String[] values = getValues(plant);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeCsvField(out, values[i]);
+        }
+    }
+
+    /**
+     * <p>Writes a plant as a JSON object, without a line break.
+     * <code>null</code> values are written as JSON <code>null</code>.</p>
+     * @param out Where to write the object
+     * @param plant The plant
+     * @throws IOException If the object cannot be written
+     */
+    public static void writeJson(final Writer out, final Plant plant)
+        throws IOException {
+        String[] values = getValues(plant);
+        out.write("{\"id\":");
+        out.write(values[0]);
+        for (int i = 1; i < values.length; i++) {
+            out.write(",\"");
+            out.write(COLUMNS[i]);
+            out.write("\":");
+            writeJsonString(out, values[i]);
+        }
+        out.write('}');
+    }
+
+    /**
+     * <p>Writes a string as a JSON string literal,
+     * or <code>null</code>.</p>
+     * @param out Where to write the string
+     * @param value The string
+     * @throws IOException If the string cannot be written
+     */
+    public static void writeJsonString(final Writer out, final String value)
+        throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                out.write("\\\"");
+                break;
+            case '\\':
+                out.write("\\\\");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            case '\r':
+                out.write("\\r");
+                break;
+            case '\t':
+                out.write("\\t");
+                break;
+            default:
+                if (c < ' ' || c == '\u2028' || c == '\u2029') {
+                    // Control characters must be escaped, and the
+                    // line separators upset some JavaScript parsers
+                    out.write("\\u");
+                    out.write(HEX.charAt((c >> 12) & 0xf));
+                    out.write(HEX.charAt((c >> 8) & 0xf));
+                    out.write(HEX.charAt((c >> 4) & 0xf));
+                    out.write(HEX.charAt(c & 0xf));
+                } else {
+                    out.write(c);
+                }
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * <p>Writes a CSV field, quoting it if it contains
+     * a comma, a quote or a line break.</p>
+     * @param out Where to write the field
+     * @param value The field
+     * @throws IOException If the field cannot be written
+     */
+    private static void writeCsvField(final Writer out, final String value)
+        throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    /**
+     * <p>Returns a plant's values in column order.</p>
+     * @param plant The plant
+     * @return String[]
+     */
+    private static String[] getValues(final Plant plant) {
+        return new String[] {
+            String.valueOf(plant.getId()), plant.getName(),
+            plant.getCommonName(), plant.getFamily(),
+            plant.getDescription(), plant.getImage(),
+            plant.getCultivarName()
+        };
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.Serializable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>The <code>PlantIndex</code> class holds the plants
+ * from one load of the <code>plants</code> table,
+ * together with every sort order that the application offers.</p>
+ *
+ * <p>The sort orders are worked out once, when the index is built,
+ * as arrays of positions in the shared <code>Plant</code> array.
+ * The index also records where each letter's plants start and end
+ * in botanical name order, where each family's plants start and end
+ * in family order, and maps each <code>id</code> to its plant.
+ * Any combination of sort order, letter and family can then be returned
+ * as a read-only view of part of one of those arrays,
+ * without sorting or copying anything.</p>
+ */
+
+final class PlantIndex {
+
+    /** The number of letters in the letter table. */
+    private static final int LETTERS = 26;
+
+    /** Orders plants by botanical name. */
+    static final Comparator BY_NAME = new Comparator() {
+            public int compare(final Object o1, final Object o2) {
+                Plant p1 = (Plant) o1;
+                Plant p2 = (Plant) o2;
+                int result = compareText(p1.getName(), p2.getName());
+                if (result == 0) {
+                    result = p1.getId() - p2.getId();
+                }
+                return result;
+            }
+        };
+
+    /** Orders plants by common name. */
+    private static final Comparator BY_COMMON_NAME = new Comparator() {
+            public int compare(final Object o1, final Object o2) {
+                Plant p1 = (Plant) o1;
+                Plant p2 = (Plant) o2;
+                int result = compareText(p1.getCommonName(),
+                                         p2.getCommonName());
+                if (result == 0) {
+                    result = p1.getId() - p2.getId();
+                }
+                return result;
+            }
+        };
+
+    /** Orders plants by family, then botanical name. */
+    private static final Comparator BY_FAMILY = new Comparator() {
+            public int compare(final Object o1, final Object o2) {
+                Plant p1 = (Plant) o1;
+                Plant p2 = (Plant) o2;
+                int result = compareText(p1.getFamily(), p2.getFamily());
+                if (result == 0) {
+                    result = BY_NAME.compare(p1, p2);
+                }
+                return result;
+            }
+        };
+
+    /** The plants, in the order they were loaded. */
+    private final Plant[] plants;
+
+    /** The positions of the plants in botanical name order. */
+    private final int[] byName;
+
+    /** The positions of the plants in common name order. */
+    private final int[] byCommonName;
+
+    /** The positions of the plants in family order. */
+    private final int[] byFamily;
+
+    /**
+     * Where each letter's plants start in <code>byName</code>.
+     * Entry <code>i</code> is for the letter <code>'a' + i</code>.
+     */
+    private final int[] letterStart = new int[LETTERS];
+
+    /** Where each letter's plants end in <code>byName</code>. */
+    private final int[] letterEnd = new int[LETTERS];
+
+    /** The plants, keyed on their <code>id</code> as an Integer. */
+    private final Map byId;
+
+    /** The families and their counts, in family order. */
+    private final List families = new ArrayList();
+
+    /**
+     * Where each family's plants start and end in <code>byFamily</code>,
+     * keyed on the family in lower case.
+     */
+    private final Map familyRanges = new HashMap();
+
+    /**
+     * <p>Builds the index.</p>
+     * @param thePlants The plants, in any order
+     */
+    PlantIndex(final Plant[] thePlants) {
+        this.plants = thePlants;
+        this.byName = order(BY_NAME);
+        this.byCommonName = order(BY_COMMON_NAME);
+        this.byFamily = order(BY_FAMILY);
+
+        for (int i = 0; i < LETTERS; i++) {
+            String letter = String.valueOf((char) ('a' + i));
+            letterStart[i] = lowerBound(letter);
+            letterEnd[i] = upperBound(letter);
+        }
+
+        this.byId = new HashMap(plants.length * 2);
+        for (int i = 0; i < plants.length; i++) {
+            byId.put(new Integer(plants[i].getId()), plants[i]);
+        }
+
+        // Each family's plants are together in family order,
+        // so one pass finds every family and its plants
+        int from = 0;
+        while (from < byFamily.length) {
+            String family = plants[byFamily[from]].getFamily();
+            int to = from + 1;
+            while (to < byFamily.length
+                   && compareText(plants[byFamily[to]].getFamily(),
+                                  family) == 0) {
+                to++;
+            }
+            if (family != null) {
+                families.add(new Facet(family, to - from));
+                familyRanges.put(family.toLowerCase(),
+                                 new int[] {from, to});
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * <p>Returns the plant with an <code>id</code>.</p>
+     * @param id The plant's <code>id</code>
+     * @return The plant, or <code>null</code> if there is no such plant
+     */
+    Plant getPlant(final int id) {
+        return (Plant) byId.get(new Integer(id));
+    }
+
+    /**
+     * <p>Returns the number of plants whose botanical name
+     * begins with each letter, from the letter table.</p>
+     * @return An array of 26 counts; entry <code>i</code>
+     * is for the letter <code>'a' + i</code>
+     */
+    int[] getLetterCounts() {
+        int[] counts = new int[LETTERS];
+        for (int i = 0; i < LETTERS; i++) {
+            counts[i] = letterEnd[i] - letterStart[i];
+        }
+        return counts;
+    }
+
+    /**
+     * <p>Returns the families and the number of plants in each.</p>
+     * @return A read-only <code>List</code> of <code>Facet</code> objects,
+     * in family order
+     */
+    List getFamilies() {
+        return Collections.unmodifiableList(families);
+    }
+
+    /**
+     * <p>Returns the plants for a sort choice,
+     * in the same order as <code>SelectData.getPlants()</code>.</p>
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @return A read-only <code>List</code> of <code>Plant</code> objects
+     */
+    List getPlants(final int choice, final String letter) {
+        if (choice == Constants.SORT_BY_COMMON_NAME) {
+            return new PlantList(plants, byCommonName, 0, plants.length);
+
+        } else if (choice == Constants.SORT_BY_FAMILY) {
+            return new PlantList(plants, byFamily, 0, plants.length);
+
+        } else if (choice == Constants.SORT_BY_CHOSEN_LETTER
+                   && letter != null) {
+            int from;
+            int to;
+            int slot = letterSlot(letter);
+            if (slot >= 0) {
+                // A single letter, which is the usual case
+                from = letterStart[slot];
+                to = letterEnd[slot];
+            } else {
+                // Anything else needs a search
+                from = lowerBound(letter);
+                to = upperBound(letter);
+            }
+            return new PlantList(plants, byName, from, to);
+
+        } else if (choice == Constants.SORT_BY_CHOSEN_FAMILY
+                   && letter != null) {
+            // Within a family, family order is botanical name order
+            int[] range = (int[]) familyRanges.get(letter.toLowerCase());
+            if (range == null) {
+                return new PlantList(plants, byFamily, 0, 0);
+            }
+            return new PlantList(plants, byFamily, range[0], range[1]);
+        }
+
+        return new PlantList(plants, byName, 0, plants.length);
+    }
+
+    /**
+     * <p>Returns the positions of the plants in the given order.</p>
+     * @param comparator The order
+     * @return int[]
+     */
+    private int[] order(final Comparator comparator) {
+        Integer[] positions = new Integer[plants.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Integer(i);
+        }
+
+        Arrays.sort(positions, new Comparator() {
+                public int compare(final Object o1, final Object o2) {
+                    return comparator.compare(
+                        plants[((Integer) o1).intValue()],
+                        plants[((Integer) o2).intValue()]);
+                }
+            });
+
+        int[] order = new int[positions.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = positions[i].intValue();
+        }
+        return order;
+    }
+
+    /**
+     * <p>Returns the position in the letter table
+     * of a single letter, or -1 if it is not a letter from a to z.</p>
+     * @param letter The letter
+     * @return int
+     */
+    private static int letterSlot(final String letter) {
+        if (letter.length() != 1) {
+            return -1;
+        }
+        char c = Character.toLowerCase(letter.charAt(0));
+        if (c < 'a' || c > 'z') {
+            return -1;
+        }
+        return c - 'a';
+    }
+
+    /**
+     * <p>Returns the position in <code>byName</code>
+     * of the first plant whose name does not come before the prefix.</p>
+     * @param prefix The prefix
+     * @return int
+     */
+    private int lowerBound(final String prefix) {
+        int low = 0;
+        int high = byName.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(plants[byName[mid]].getName(), prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * <p>Returns the position in <code>byName</code>
+     * of the first plant whose name comes after every name
+     * that starts with the prefix.</p>
+     * @param prefix The prefix
+     * @return int
+     */
+    private int upperBound(final String prefix) {
+        int low = 0;
+        int high = byName.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(plants[byName[mid]].getName(), prefix) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * <p>Compares the start of a name with a prefix, without regard to case.
+     * A name that starts with the prefix compares as equal.</p>
+     * @param name The name
+     * @param prefix The prefix
+     * @return int
+     */
+    private static int comparePrefix(final String name, final String prefix) {
+        if (name == null) {
+            return -1;
+        }
+        if (name.length() > prefix.length()) {
+            return compareText(name.substring(0, prefix.length()), prefix);
+        }
+        return compareText(name, prefix);
+    }
+
+    /**
+     * <p>Compares two column values without regard to case,
+     * putting <code>null</code> values first as the database does.</p>
+     * @param s1 The first value
+     * @param s2 The second value
+     * @return int
+     */
+    static int compareText(final String s1, final String s2) {
+        if (s1 == null) {
+            return s2 == null ? 0 : -1;
+        }
+        if (s2 == null) {
+            return 1;
+        }
+        return String.CASE_INSENSITIVE_ORDER.compare(s1, s2);
+    }
+
+    /**
+     * <p>A read-only view of part of one of the index's sort orders.</p>
+     */
+    private static final class PlantList extends AbstractList
+        implements RandomAccess, Serializable {
+
+        /** The shared plants. */
+        private final transient Plant[] plants;
+
+        /** The shared sort order. */
+        private final transient int[] order;
+
+        /** The first position in the sort order. */
+        private final int from;
+
+        /** The position after the last one in the sort order. */
+        private final int to;
+
+        /**
+         * <p>Creates a view.</p>
+         * @param thePlants The shared plants
+         * @param theOrder The shared sort order
+         * @param start The first position in the sort order
+         * @param end The position after the last one in the sort order
+         */
+        private PlantList(final Plant[] thePlants, final int[] theOrder,
+                          final int start, final int end) {
+            this.plants = thePlants;
+            this.order = theOrder;
+            this.from = start;
+            this.to = end;
+        }
+
+        /**
+         * <p>Returns a plant from the view.</p>
+         * @param index The position in the view
+         * @return Object
+         */
+        public Object get(final int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index
+                                                    + ", Size: " + size());
+            }
+            return plants[order[from + index]];
+        }
+
+        /**
+         * <p>Returns the number of plants in the view.</p>
+         * @return int
+         */
+        public int size() {
+            return to - from;
+        }
+
+        /**
+         * <p>Returns a view of part of this view,
+         * which also shares the index's arrays.</p>
+         * @param start The first position
+         * @param end The position after the last one
+         * @return List
+         */
+        public List subList(final int start, final int end) {
+            if (start < 0 || end > size() || start > end) {
+                throw new IndexOutOfBoundsException("From: " + start
+                                                    + ", To: " + end);
+            }
+            return new PlantList(plants, order, from + start, from + end);
+        }
+
+        /**
+         * <p>Serializes just the plants in the view,
+         * rather than the index's arrays.</p>
+         * @return Object
+         */
+        private Object writeReplace() {
+            return new ArrayList(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.Serializable;
+
+import java.util.List;
+
+/**
+ * <p>The <code>PlantPage</code> class holds one page of results
+ * from <code>SelectData.getPage()</code>,
+ * together with the tokens that fetch the pages around it.</p>
+ *
+ * <p>The tokens are opaque strings that are safe to put in a URL.
+ * A token is <code>null</code> if there is no such page.</p>
+ */
+
+public final class PlantPage implements Serializable {
+
+    /** The plants on the page. */
+    private final List plants;
+
+    /** The token for the previous page, or <code>null</code>. */
+    private final String previousToken;
+
+    /** The token for the next page, or <code>null</code>. */
+    private final String nextToken;
+
+    /** The token for the last page. */
+    private final String lastToken;
+
+    /**
+     * <p>Creates a page.</p>
+     * @param thePlants The plants on the page
+     * @param previous The token for the previous page, or <code>null</code>
+     * @param next The token for the next page, or <code>null</code>
+     * @param last The token for the last page
+     */
+    public PlantPage(final List thePlants, final String previous,
+                     final String next, final String last) {
+        this.plants = thePlants;
+        this.previousToken = previous;
+        this.nextToken = next;
+        this.lastToken = last;
+    }
+
+    /**
+     * <p>Returns the plants on the page.</p>
+     * @return A <code>List</code> of <code>Plant</code> objects
+     */
+    public List getPlants() {
+        return plants;
+    }
+
+    /**
+     * <p>Returns the token for the previous page.</p>
+     * @return String, or <code>null</code> if this is the first page
+     */
+    public String getPreviousToken() {
+        return previousToken;
+    }
+
+    /**
+     * <p>Returns the token for the next page.</p>
+     * @return String, or <code>null</code> if this is the last page
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * <p>Returns the token for the last page.</p>
+     * @return String
+     */
+    public String getLastToken() {
+        return lastToken;
+    }
+
+    /**
+     * <p>Checks whether the page has any plants on it.</p>
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return plants.isEmpty();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>The <code>PrefixIndex</code> class completes the beginning
+ * of a botanical or common name, for type-ahead searches.</p>
+ *
+ * <p>Every name is held once, in lower case, in a sorted array,
+ * next to the name as it should be shown.
+ * All the names that begin with a prefix sit together in the array,
+ * so a completion is a binary search followed by a short scan,
+ * without creating anything but the results.</p>
+ *
+ * <p>An index never changes once it is built;
+ * <code>PlantCatalogue</code> builds a new one
+ * whenever the plants change.</p>
+ */
+
+final class PrefixIndex {
+
+    /** The names in lower case, in order. */
+    private final String[] keys;
+
+    /** The names as they should be shown, in the same order. */
+    private final String[] names;
+
+    /**
+     * <p>Builds the index from the botanical and common names
+     * of a set of plants. A name that appears more than once
+     * is only held once.</p>
+     * @param plants The plants
+     */
+    PrefixIndex(final Plant[] plants) {
+        String[][] entries = new String[plants.length * 2][];
+        int count = 0;
+        for (int i = 0; i < plants.length; i++) {
+            String name = plants[i].getName();
+            if (name != null) {
+                entries[count++] = new String[] {name.toLowerCase(), name};
+            }
+            String commonName = plants[i].getCommonName();
+            if (commonName != null) {
+                entries[count++] =
+                    new String[] {commonName.toLowerCase(), commonName};
+            }
+        }
+
+        Arrays.sort(entries, 0, count, new Comparator() {
+                public int compare(final Object a, final Object b) {
+                    String[] first = (String[]) a;
+                    String[] second = (String[]) b;
+                    int result = first[0].compareTo(second[0]);
+                    if (result == 0) {
+                        result = first[1].compareTo(second[1]);
+                    }
+                    return result;
+                }
+            });
+
+        // Drop the duplicates, which are next to each other
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || !entries[i][1].equals(entries[unique - 1][1])) {
+                entries[unique++] = entries[i];
+            }
+        }
+
+        keys = new String[unique];
+        names = new String[unique];
+        for (int i = 0; i < unique; i++) {
+            keys[i] = entries[i][0];
+            names[i] = entries[i][1];
+        }
+    }
+
+    /**
+     * <p>Returns the names that begin with a prefix,
+     * ignoring case, in alphabetical order.
+     * A name that matches the prefix exactly comes first.</p>
+     * @param prefix The beginning of a name
+     * @param limit The most names to return
+     * @return A <code>List</code> of <code>String</code> objects
+     */
+    List complete(final String prefix, final int limit) {
+        List results = new ArrayList();
+        String key = prefix.toLowerCase();
+
+        // Find the first name that is not before the prefix
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < keys.length && results.size() < limit; i++) {
+            if (!keys[i].startsWith(key)) {
+                break;
+            }
+            results.add(names[i]);
+        }
+        return results;
+    }
+
+    /**
+     * <p>Returns the number of names in the index.</p>
+     * @return int
+     */
+    int size() {
+        return keys.length;
+    }
+}
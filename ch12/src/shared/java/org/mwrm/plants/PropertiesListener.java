@@ -0,0 +1,36 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.Properties;
+
+/**
+ * The <code>PropertiesListener</code> interface is for classes
+ * that want to know when <code>PropertiesLoader</code> reads
+ * a changed <code>database.properties</code> file,
+ * so that they can use the new settings without a restart.
+ */
+
+public interface PropertiesListener {
+
+    /**
+     * Called after the properties file has changed.
+     *
+     * @param properties A copy of the new properties
+     */
+    void propertiesChanged(Properties properties);
+}
@@ -16,38 +16,397 @@
 
 package org.mwrm.plants;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URL;
+import java.net.URLDecoder;
 
 /**
  * The <code>PropertiesLoader</code> class loads properties
  * from the <code>database.properties</code> file and passes them
  * to whichever class wants to use them. This centralises the name
  * of the properties file so the entire application can use it.
+ *
+ * <p>The file is read once, when the application's loader is created,
+ * and kept in memory. If the file is a plain file rather than
+ * part of a JAR, the loader checks its modification time
+ * at most once every <code>properties.checkInterval</code> milliseconds
+ * (default 5000) when it is asked for a property,
+ * and reads it again if it has changed.
+ * Classes that need to know about the change,
+ * such as <code>ConnectionPool</code>,
+ * register a <code>PropertiesListener</code>.</p>
  */
 
-public class PropertiesLoader {
+public final class PropertiesLoader {
+
+    /** The name of the properties file on the classpath. */
+    private static final String FILE_NAME = "database.properties";
+
+    /** The default time between checks, in milliseconds. */
+    private static final long DEFAULT_CHECK_INTERVAL = 5000;
+
+    /** The single loader for the application. */
+    private static PropertiesLoader instance;
+
+    /** Where the properties file is on the classpath. */
+    private final URL resource;
+
+    /** The properties file, or <code>null</code> if it is in a JAR. */
+    private final File file;
+
+    /** The current properties. */
+    private Properties properties;
+
+    /** The file's modification time when it was last read. */
+    private long lastModified;
+
+    /** When the file was last checked for changes. */
+    private long lastChecked;
+
+    /** The time between checks, in milliseconds. */
+    private long checkInterval;
+
+    /** The <code>PropertiesListener</code>s to tell about changes. */
+    private final List listeners = new ArrayList();
+
+    /** The number of times the file has been read again. */
+    private long reloads;
+
+    /** The last problem reading the file or telling a listener. */
+    private String lastError;
+
+    /**
+     * Reads the properties file for the first time.
+     * @param aResource Where the properties file is on the classpath
+     * @throws IOException If the file cannot be read
+     */
+    private PropertiesLoader(final URL aResource) throws IOException {
+        this.resource = aResource;
+
+        File plainFile = null;
+        if ("file".equals(resource.getProtocol())) {
+            plainFile = new File(URLDecoder.decode(resource.getFile(),
+                                                   "UTF-8"));
+        }
+        this.file = plainFile;
 
-    /** A simple constructor. */
-    public PropertiesLoader() { }
+        if (file != null) {
+            lastModified = file.lastModified();
+        }
+        lastChecked = System.currentTimeMillis();
+        setProperties(read());
+    }
 
     /**
-     * Loads the properties for whichever class needs them.
+     * Returns the application's loader, reading the properties file
+     * the first time.
+     *
+     * @return PropertiesLoader
+     * @throws IllegalStateException If the properties file
+     * is not on the classpath or cannot be read
+     */
+    public static synchronized PropertiesLoader getInstance() {
+        if (instance == null) {
+            URL url = PropertiesLoader.class.getClassLoader()
+                .getResource(FILE_NAME);
+            if (url == null) {
+                throw new IllegalStateException(FILE_NAME
+                                                + " is not on the classpath");
+            }
+            try {
+                instance = new PropertiesLoader(url);
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Cannot read " + FILE_NAME
+                                                + ": " + ioe.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns a copy of the current properties,
+     * which the caller may change.
      *
      * @return A Java properties file
      */
-    public final Properties loadProperties() {
+    public Properties loadProperties() {
+        checkForChanges();
+        synchronized (this) {
+            return (Properties) properties.clone();
+        }
+    }
+
+    /**
+     * Returns a property.
+     *
+     * @param name The property name
+     * @return The value, or <code>null</code> if there is no such property
+     */
+    public String getString(final String name) {
+        checkForChanges();
+        synchronized (this) {
+            return properties.getProperty(name);
+        }
+    }
+
+    /**
+     * Returns a property.
+     *
+     * @param name The property name
+     * @param defaultValue The value to use if the property is missing
+     * @return String
+     */
+    public String getString(final String name, final String defaultValue) {
+        String value = getString(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Returns a property as an integer.
+     *
+     * @param name The property name
+     * @param defaultValue The value to use if the property is missing,
+     * is not a number or is too big for an <code>int</code>
+     * @return int
+     */
+    public int getInt(final String name, final int defaultValue) {
+        return parseInt(getString(name), defaultValue);
+    }
+
+    /**
+     * Returns a property as a long integer.
+     *
+     * @param name The property name
+     * @param defaultValue The value to use if the property is missing
+     * or is not a number
+     * @return long
+     */
+    public long getLong(final String name, final long defaultValue) {
+        return parseLong(getString(name), defaultValue);
+    }
+
+    /**
+     * Reads a property from a set of properties as an integer,
+     * for listeners that are given the new properties.
+     *
+     * @param props The properties
+     * @param name The property name
+     * @param defaultValue The value to use if the property is missing,
+     * is not a number or is too big for an <code>int</code>
+     * @return int
+     */
+    public static int getInt(final Properties props, final String name,
+                             final int defaultValue) {
+        return parseInt(props.getProperty(name), defaultValue);
+    }
+
+    /**
+     * Reads a property from a set of properties as a long integer,
+     * for listeners that are given the new properties.
+     *
+     * @param props The properties
+     * @param name The property name
+     * @param defaultValue The value to use if the property is missing
+     * or is not a number
+     * @return long
+     */
+    public static long getLong(final Properties props,
+                               final String name, final long defaultValue) {
+        return parseLong(props.getProperty(name), defaultValue);
+    }
+
+    /**
+     * Registers a listener to be told when the properties change.
+     * Listeners are called on the thread that notices the change,
+     * after the new properties are in place.
+     *
+     * @param listener The listener
+     */
+    public synchronized void addListener(final PropertiesListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener about changes.
+     *
+     * @param listener The listener
+     */
+    public synchronized void removeListener(
+        final PropertiesListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Reads the properties file again if it has changed
+     * since it was last read, and tells the listeners
+     * if any of the properties are different.
+     * The file is checked at most once every
+     * <code>properties.checkInterval</code> milliseconds.
+     * If the file cannot be read, the old properties are kept.
+     */
+    public void checkForChanges() {
+        Properties changed;
+        List toTell;
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (file == null || now - lastChecked < checkInterval) {
+                return;
+            }
+            lastChecked = now;
+
+            long modified = file.lastModified();
+            if (modified == 0 || modified == lastModified) {
+                // Unchanged, or being replaced
+                return;
+            }
+
+            Properties loaded;
+            try {
+                loaded = read();
+            } catch (IOException ioe) {
+                lastError = "Cannot read " + file + ": " + ioe.getMessage();
+                return;
+            }
+            lastModified = modified;
+            lastError = null;
+            if (loaded.equals(properties)) {
+                return;
+            }
+            setProperties(loaded);
+            reloads++;
+
+            changed = loaded;
+            toTell = new ArrayList(listeners);
+        }
+
+        // Tell the listeners without holding the lock,
+        // so that they can call back into the loader
+        for (Iterator i = toTell.iterator(); i.hasNext();) {
+            PropertiesListener listener = (PropertiesListener) i.next();
+            try {
+                listener.propertiesChanged((Properties) changed.clone());
+            } catch (RuntimeException re) {
+                synchronized (this) {
+                    lastError = re.toString();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of times the file has been read again
+     * because it changed.
+     *
+     * @return long
+     */
+    public synchronized long getReloadCount() {
+        return reloads;
+    }
+
+    /**
+     * Returns the last problem reading the file
+     * or reconfiguring a listener.
+     *
+     * @return The problem, or <code>null</code> if there wasn't one
+     */
+    public synchronized String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Returns a one-line summary of the loader.
+     *
+     * @return String
+     */
+    public synchronized String toString() {
+        return "PropertiesLoader[file=" + resource
+            + ", reloads=" + reloads
+            + ", listeners=" + listeners.size()
+            + ", lastError=" + lastError + "]";
+    }
+
+    /**
+     * Makes a set of properties current.
+     * The caller must hold the loader's lock.
+     *
+     * @param loaded The properties
+     */
+    private void setProperties(final Properties loaded) {
+        properties = loaded;
+        checkInterval =
+            parseLong(loaded.getProperty("properties.checkInterval"),
+                      DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Reads the properties file.
+     *
+     * @return Properties
+     * @throws IOException If the file cannot be read
+     */
+    private Properties read() throws IOException {
+        InputStream in;
+        if (file != null) {
+            in = new FileInputStream(file);
+        } else {
+            in = resource.openStream();
+        }
 
-        // Read properties file.
-        Properties properties = new Properties();
+        Properties loaded = new Properties();
         try {
-            properties.load(this.getClass().getClassLoader()
-                            .getResourceAsStream("database.properties"));
-        } catch (IOException e) {
-            System.out.println("Error: " + e.getMessage());
+            loaded.load(in);
+        } finally {
+            in.close();
         }
+        return loaded;
+    }
 
-        return properties;
+    /**
+     * Reads an integer.
+     *
+     * @param value The text, which may be <code>null</code>
+     * @param defaultValue The value to use if the text is
+     * <code>null</code>, is not a number or is too big
+     * @return int
+     */
+    private static int parseInt(final String value, final int defaultValue) {
+        long number = parseLong(value, defaultValue);
+        if (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+            return defaultValue;
+        }
+        return (int) number;
+    }
+
+    /**
+     * Reads a long integer.
+     *
+     * @param value The text, which may be <code>null</code>
+     * @param defaultValue The value to use if the text is
+     * <code>null</code> or is not a number
+     * @return long
+     */
+    private static long parseLong(final String value,
+                                  final long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
     }
 }
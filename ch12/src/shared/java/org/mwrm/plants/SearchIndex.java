@@ -0,0 +1,347 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * <p>The <code>SearchIndex</code> class finds plants by keyword.
+ * It is an inverted index: it maps every word in a plant's
+ * botanical name, common name, family and description
+ * to the plants that use it.</p>
+ *
+ * <p>Words are split at anything other than a letter or a digit
+ * and compared in lower case. Each word in a query matches
+ * any indexed word that begins with it, so "ros" finds "Rosa"
+ * and "rosemary". A plant must match every word in the query.
+ * Plants are ranked by where their words were found
+ * (a name counts for more than a description)
+ * and whether they matched whole words or only prefixes.</p>
+ *
+ * <p>The index is changed one plant at a time,
+ * so a reload of the catalogue only has to index the plants
+ * that were added or changed.</p>
+ */
+
+final class SearchIndex {
+
+    /** The weight of a word in the botanical name. */
+    private static final int NAME_WEIGHT = 8;
+
+    /** The weight of a word in the common name. */
+    private static final int COMMON_NAME_WEIGHT = 6;
+
+    /** The weight of a word in the family. */
+    private static final int FAMILY_WEIGHT = 4;
+
+    /** The weight of a word in the description. */
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    /** A whole-word match counts this many times more than a prefix. */
+    private static final int EXACT_FACTOR = 2;
+
+    /**
+     * Every indexed word, in order, mapped to a <code>Map</code>
+     * of plant <code>id</code>s to the word's weight in that plant.
+     */
+    private final TreeMap words = new TreeMap();
+
+    /** The indexed plants, keyed on their <code>id</code>. */
+    private final Map plants = new HashMap();
+
+    /** The number of plants added, changed or removed since creation. */
+    private long updates;
+
+    /**
+     * <p>Creates an empty index.</p>
+     */
+    SearchIndex() { }
+
+    /**
+     * <p>Brings the index up to date with a new copy of the table.
+     * Plants that are the same as before are left alone.</p>
+     * @param current The plants that should be in the index
+     */
+    synchronized void update(final Plant[] current) {
+        Map stale = new HashMap(plants);
+
+        for (int i = 0; i < current.length; i++) {
+            Integer id = new Integer(current[i].getId());
+            Plant old = (Plant) stale.remove(id);
+            if (current[i].equals(old)) {
+                continue;
+            }
+            if (old != null) {
+                remove(old);
+            }
+            add(current[i]);
+        }
+
+        // Anything left has gone from the table
+        for (Iterator i = stale.values().iterator(); i.hasNext();) {
+            remove((Plant) i.next());
+        }
+    }
+
+    /**
+     * <p>Finds the plants that match every word in a query,
+     * best match first. Plants that match equally well
+     * are in botanical name order.</p>
+     * @param query The words to look for
+     * @return A <code>List</code> of <code>Plant</code> objects,
+     * which is empty if the query has no words
+     */
+    synchronized List search(final String query) {
+        List terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return new ArrayList();
+        }
+
+        // The plants that match every word so far, with their scores
+        Map scores = null;
+        for (Iterator i = terms.iterator(); i.hasNext();) {
+            Map matches = match((String) i.next());
+            if (scores == null) {
+                scores = matches;
+            } else {
+                scores = intersect(scores, matches);
+            }
+            if (scores.isEmpty()) {
+                return new ArrayList();
+            }
+        }
+
+        List results = new ArrayList(scores.size());
+        for (Iterator i = scores.keySet().iterator(); i.hasNext();) {
+            results.add(plants.get(i.next()));
+        }
+        final Map finalScores = scores;
+        Collections.sort(results, new Comparator() {
+                public int compare(final Object a, final Object b) {
+                    int scoreA = getScore(finalScores, (Plant) a);
+                    int scoreB = getScore(finalScores, (Plant) b);
+                    if (scoreA != scoreB) {
+                        return scoreB - scoreA;
+                    }
+                    return PlantIndex.BY_NAME.compare(a, b);
+                }
+            });
+        return results;
+    }
+
+    /**
+     * <p>Returns the number of plants in the index.</p>
+     * @return int
+     */
+    synchronized int size() {
+        return plants.size();
+    }
+
+    /**
+     * <p>Returns the number of different words in the index.</p>
+     * @return int
+     */
+    synchronized int getWordCount() {
+        return words.size();
+    }
+
+    /**
+     * <p>Returns the number of plants added, changed or removed.</p>
+     * @return long
+     */
+    synchronized long getUpdateCount() {
+        return updates;
+    }
+
+    /**
+     * <p>Splits text into lower-case words.</p>
+     * @param text The text, which may be <code>null</code>
+     * @return A <code>List</code> of <code>String</code> objects
+     */
+    static List tokenize(final String text) {
+        List tokens = new ArrayList();
+        if (text == null) {
+            return tokens;
+        }
+
+        StringBuffer token = new StringBuffer();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * <p>Adds a plant's words to the index.</p>
+     * @param plant The plant
+     */
+    private void add(final Plant plant) {
+        Integer id = new Integer(plant.getId());
+
+        Map weights = getWeights(plant);
+
+        for (Iterator i = weights.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            Map postings = (Map) words.get(entry.getKey());
+            if (postings == null) {
+                postings = new HashMap();
+                words.put(entry.getKey(), postings);
+            }
+            postings.put(id, entry.getValue());
+        }
+
+        plants.put(id, plant);
+        updates++;
+    }
+
+    /**
+     * <p>Removes a plant's words from the index.</p>
+     * @param plant The plant, as it was indexed
+     */
+    private void remove(final Plant plant) {
+        Integer id = new Integer(plant.getId());
+
+        Map weights = getWeights(plant);
+
+        for (Iterator i = weights.keySet().iterator(); i.hasNext();) {
+            Object word = i.next();
+            Map postings = (Map) words.get(word);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    words.remove(word);
+                }
+            }
+        }
+
+        plants.remove(id);
+        updates++;
+    }
+
+    /**
+     * <p>Adds up the weight of each of a plant's words
+     * across its fields.</p>
+     * @param plant The plant
+     * @return A <code>Map</code> of words to <code>Integer</code> weights
+     */
+    private static Map getWeights(final Plant plant) {
+        Map weights = new HashMap();
+        addWords(weights, plant.getName(), NAME_WEIGHT);
+        addWords(weights, plant.getCultivarName(), NAME_WEIGHT);
+        addWords(weights, plant.getCommonName(), COMMON_NAME_WEIGHT);
+        addWords(weights, plant.getFamily(), FAMILY_WEIGHT);
+        addWords(weights, plant.getDescription(), DESCRIPTION_WEIGHT);
+        return weights;
+    }
+
+    /**
+     * <p>Adds the words in a field to a map of weights.</p>
+     * @param weights The weights, keyed on the word
+     * @param text The field, which may be <code>null</code>
+     * @param weight The weight of a word in this field
+     */
+    private static void addWords(final Map weights, final String text,
+                                 final int weight) {
+        for (Iterator i = tokenize(text).iterator(); i.hasNext();) {
+            Object word = i.next();
+            Integer total = (Integer) weights.get(word);
+            int value = weight;
+            if (total != null) {
+                value += total.intValue();
+            }
+            weights.put(word, new Integer(value));
+        }
+    }
+
+    /**
+     * <p>Finds the plants with a word that begins with a query word.
+     * Each plant's score is the weight of its best matching word,
+     * doubled if the word matched exactly.</p>
+     * @param term The query word
+     * @return A <code>Map</code> of plant <code>id</code>s to scores
+     */
+    private Map match(final String term) {
+        Map scores = new HashMap();
+
+        // Every word that begins with the term sorts between
+        // the term itself and the term followed by the last character
+        SortedMap range = words.subMap(term, term + Character.MAX_VALUE);
+        for (Iterator i = range.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            int factor = 1;
+            if (entry.getKey().equals(term)) {
+                factor = EXACT_FACTOR;
+            }
+
+            Map postings = (Map) entry.getValue();
+            for (Iterator j = postings.entrySet().iterator(); j.hasNext();) {
+                Map.Entry posting = (Map.Entry) j.next();
+                int score = ((Integer) posting.getValue()).intValue() * factor;
+                Integer best = (Integer) scores.get(posting.getKey());
+                if (best == null || best.intValue() < score) {
+                    scores.put(posting.getKey(), new Integer(score));
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * <p>Keeps the plants that appear in both maps,
+     * adding their scores together.</p>
+     * @param first The first map of plant <code>id</code>s to scores
+     * @param second The second map of plant <code>id</code>s to scores
+     * @return A new <code>Map</code> of plant <code>id</code>s to scores
+     */
+    private static Map intersect(final Map first, final Map second) {
+        Map both = new HashMap();
+        for (Iterator i = first.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            Integer other = (Integer) second.get(entry.getKey());
+            if (other != null) {
+                int score = ((Integer) entry.getValue()).intValue()
+                    + other.intValue();
+                both.put(entry.getKey(), new Integer(score));
+            }
+        }
+        return both;
+    }
+
+    /**
+     * <p>Returns a plant's score.</p>
+     * @param scores The scores, keyed on plant <code>id</code>
+     * @param plant The plant
+     * @return int
+     */
+    private static int getScore(final Map scores, final Plant plant) {
+        return ((Integer) scores.get(new Integer(plant.getId()))).intValue();
+    }
+}
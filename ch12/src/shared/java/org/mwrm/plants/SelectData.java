@@ -17,140 +17,779 @@
 package org.mwrm.plants;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
-import java.util.Properties;
 
 /**
  * <p>The <code>SelectData</code> class establishes a connection
  * with a database and executes a query, as selected by the client.</p>
  *
- * <p>It gets the database driver name and the URL
+ * <p>It borrows its connections from the <code>ConnectionPool</code>,
+ * which gets the database driver name and the URL
  * from the <code>database.properties</code> file.
  * When the results come back from the database,
- * this class places them as <code>HashMap</code> records
- * in a <code>Vector</code>. It then passes this <code>Vector</code>
- * back to the calling client.</p>
+ * this class places them as <code>Plant</code> objects
+ * in a <code>List</code>. It then passes this <code>List</code>
+ * back to the calling client.
+ * Older clients can still get <code>HashMap</code> records
+ * in a <code>Vector</code> from <code>getData()</code>.</p>
  *
  * <p>The SQL strings are:</p>
  *
  * <ul>
  * <li><code>Constants.SORT_BY_NAME</code> (the default):
- * <code>SELECT * FROM plants ORDER BY name</code></li>
+ * <code>SELECT * FROM plants ORDER BY name, id</code></li>
  * <li><code>Constants.SORT_BY_COMMON_NAME</code>:
- * <code>SELECT * FROM plants ORDER BY common_name</code></li>
+ * <code>SELECT * FROM plants ORDER BY common_name, id</code></li>
  * <li><code>Constants.SORT_BY_FAMILY</code>:
- * <code>SELECT * FROM plants ORDER BY family, name</code></li>
+ * <code>SELECT * FROM plants ORDER BY family, name, id</code></li>
  * <li><code>Constants.SORT_BY_CHOSEN_LETTER</code>:
- * <code>SELECT * FROM plants WHERE name REGEXP '^X'</code>
- * where <code>X</code> is a letter supplied by the client</li>
+ * <code>SELECT * FROM plants WHERE name LIKE ? ORDER BY name, id</code>
+ * where the parameter is <code>X%</code>
+ * and <code>X</code> is a letter supplied by the client</li>
+ * <li><code>Constants.SORT_BY_CHOSEN_FAMILY</code>:
+ * <code>SELECT * FROM plants WHERE family = ? ORDER BY name, id</code>
+ * where the parameter is a family supplied by the client</li>
  * </ul>
+ *
+ * <p>A page of results adds <code>LIMIT ? OFFSET ?</code>
+ * to the string, while <code>getPage()</code> seeks
+ * to the page with a condition on the sort columns instead.
+ * They are run as prepared statements,
+ * which the <code>ConnectionPool</code> caches for each connection.</p>
  */
 
 public final class SelectData {
 
+    /**
+     * Selects all plants, ordered by botanical name.
+     * Every order ends with <code>id</code>,
+     * so that pages of results don't overlap.
+     */
+    private static final String SELECT_BY_NAME =
+        "SELECT * FROM plants ORDER BY name, id";
+
+    /** Selects all plants, ordered by common name. */
+    private static final String SELECT_BY_COMMON_NAME =
+        "SELECT * FROM plants ORDER BY common_name, id";
+
+    /** Selects all plants, ordered by family, then botanical name. */
+    private static final String SELECT_BY_FAMILY =
+        "SELECT * FROM plants ORDER BY family, name, id";
+
+    /**
+     * Selects the plants whose botanical name starts with a prefix.
+     * A <code>LIKE</code> prefix match can use an index on
+     * <code>name</code>, whereas a <code>REGEXP</code> cannot.
+     */
+    private static final String SELECT_BY_CHOSEN_LETTER =
+        "SELECT * FROM plants WHERE name LIKE ? ORDER BY name, id";
+
+    /** Selects the plants in a family, ordered by botanical name. */
+    private static final String SELECT_BY_CHOSEN_FAMILY =
+        "SELECT * FROM plants WHERE family = ? ORDER BY name, id";
+
+    /** Limits a query to one page of results. */
+    private static final String LIMIT = " LIMIT ? OFFSET ?";
+
+    /** Counts all plants. */
+    private static final String COUNT_ALL =
+        "SELECT COUNT(*) FROM plants";
+
+    /** Counts the plants whose botanical name starts with a prefix. */
+    private static final String COUNT_BY_CHOSEN_LETTER =
+        "SELECT COUNT(*) FROM plants WHERE name LIKE ?";
+
+    /** Counts the plants in a family. */
+    private static final String COUNT_BY_CHOSEN_FAMILY =
+        "SELECT COUNT(*) FROM plants WHERE family = ?";
+
+    /** Counts the plants in each family, in a single pass over the table. */
+    private static final String COUNT_BY_FAMILY =
+        "SELECT family, COUNT(*) FROM plants WHERE family IS NOT NULL"
+        + " GROUP BY family ORDER BY family";
+
+    /**
+     * Counts the plants for each first letter of the botanical name,
+     * in a single pass over the table.
+     */
+    private static final String COUNT_BY_LETTER =
+        "SELECT LOWER(SUBSTRING(name, 1, 1)), COUNT(*) FROM plants"
+        + " GROUP BY 1";
+
+    /** The number of letters from a to z. */
+    private static final int LETTERS = 26;
+
+    /** The SQL for finding a plant by its primary key. */
+    private static final String SELECT_BY_ID =
+        "SELECT * FROM plants WHERE id = ?";
+
+    /** The columns that make up a <code>Plant</code>. */
+    private static final String[] COLUMNS = {
+        "id", "name", "common_name", "family",
+        "description", "image", "cultivar_name"
+    };
+
     /**
      *<p>The default constructor.</p>
      */
     private SelectData() { }
 
     /**
-     * Get the data from the database.
+     * Get the data from the database,
+     * using a connection borrowed from the <code>ConnectionPool</code>.
      * @param choice The criteria for sorting the results.
      * This choice is held in the <code>Constants</code> class.
-     * @param letter The letter to use when limiting the search,
+     * @param letter The letter or family to use when limiting the search,
      * should that option be chosen.
-     * @return Vector
+     * @return A <code>List</code> of <code>Plant</code> objects
      * @throws ClassNotFoundException If the database driver is not found
      * @throws SQLException If there's a problem with database operations
      */
-    public static Vector getData(final int choice, final String letter)
+    public static List getPlants(final int choice, final String letter)
         throws ClassNotFoundException, SQLException {
+        return query(getSelectString(choice),
+                     getLetterParameters(choice, letter));
+    }
 
-        // Read properties file
-        PropertiesLoader loader = new PropertiesLoader();
-        Properties properties = loader.loadProperties();
+    /**
+     * Get one page of data from the database,
+     * so that clients don't have to hold every result
+     * just to show a few of them.
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @param start The position of the first result, starting at 0
+     * @param count The maximum number of results
+     * @return A <code>List</code> of <code>Plant</code> objects
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static List getPlants(final int choice, final String letter,
+                                 final int start, final int count)
+        throws ClassNotFoundException, SQLException {
+        List parameters = getLetterParameters(choice, letter);
+        parameters.add(new Integer(count));
+        parameters.add(new Integer(Math.max(start, 0)));
+        return query(getSelectString(choice) + LIMIT, parameters);
+    }
 
-        // First load the MySQL JDBC driver
-        Class.forName(properties.getProperty("driver.name"));
+    /**
+     * Get one page of data from the database,
+     * starting from a token returned with an earlier page.
+     * Rather than skipping rows, the query seeks straight to the token's
+     * place in the sort order, so every page costs the same
+     * however far through the results it is.
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @param token A token from an earlier <code>PlantPage</code>,
+     * or <code>null</code> for the first page
+     * @param count The maximum number of results
+     * @return PlantPage
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     * @throws IllegalArgumentException If the token is not valid
+     * for the choice
+     */
+    public static PlantPage getPage(final int choice, final String letter,
+                                    final String token, final int count)
+        throws ClassNotFoundException, SQLException {
 
-        // The datasource
-        String url = properties.getProperty("database.root")
-            + properties.getProperty("database.name");
+        PageToken from = PageToken.first(choice);
+        if (token != null) {
+            from = PageToken.decode(token);
+            if (from.getChoice() != choice) {
+                throw new IllegalArgumentException("The page token is for "
+                                                   + "a different search");
+            }
+        }
 
-        // Open the connection
-        Connection con = DriverManager.getConnection(url, "antBook", "antB00k");
+        List parameters = getLetterParameters(choice, letter);
+        StringBuffer sql = new StringBuffer("SELECT * FROM plants");
+        String where = " WHERE ";
+        if (choice == Constants.SORT_BY_CHOSEN_LETTER) {
+            sql.append(" WHERE name LIKE ?");
+            where = " AND ";
+        } else if (choice == Constants.SORT_BY_CHOSEN_FAMILY) {
+            sql.append(" WHERE family = ?");
+            where = " AND ";
+        }
+        String[] columns = PageToken.getColumns(choice);
+        if (!from.isEdge()) {
+            sql.append(where);
+            appendSeek(sql, parameters, columns, from.getValues(), 0,
+                       from.isForward());
+        }
+        appendOrder(sql, columns, from.isForward());
 
-        Statement stmt = con.createStatement();
+        // One extra row tells us whether there's another page
+        sql.append(" LIMIT ?");
+        parameters.add(new Integer(count + 1));
 
-        String select = getSelectString(choice, letter);
+        List plants = query(sql.toString(), parameters);
+        boolean more = plants.size() > count;
+        if (more) {
+            plants.remove(plants.size() - 1);
+        }
 
-        // Now we get the data
-        ResultSet rs = stmt.executeQuery(select);
+        if (!from.isForward()) {
+            if (!more) {
+                // We've gone back to the start, so fill up the first page
+                return getPage(choice, letter, null, count);
+            }
+            // The rows came back in reverse order
+            Collections.reverse(plants);
+        }
 
-        // We'll need the metadata when we come to populate the session object
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int numberOfColumns = rsmd.getColumnCount();
+        String previous = null;
+        String next = null;
+        if (!plants.isEmpty()) {
+            Plant first = (Plant) plants.get(0);
+            Plant last = (Plant) plants.get(plants.size() - 1);
 
-        Vector results = new Vector();
+            if (from.isForward() ? !from.isEdge() : more) {
+                previous = PageToken.before(choice, first).encode();
+            }
+            if (from.isForward() ? more : !from.isEdge()) {
+                next = PageToken.after(choice, last).encode();
+            }
+        }
 
-        while (rs.next()) {
-            // We need a fresh entry every time
-            HashMap record = new HashMap(numberOfColumns);
+        return new PlantPage(plants, previous, next,
+                             PageToken.last(choice).encode());
+    }
 
-            String columnName = "";
+    /**
+     * Count the results that <code>getPlants()</code> would return.
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @return int
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static int countPlants(final int choice, final String letter)
+        throws ClassNotFoundException, SQLException {
+
+        Integer count = (Integer) withConnection(new ConnectionWork() {
+                public Object run(final ConnectionPool pool,
+                                  final Connection con)
+                    throws SQLException {
+                    PreparedStatement stmt;
+                    if (choice == Constants.SORT_BY_CHOSEN_LETTER) {
+                        stmt = pool.prepare(con, COUNT_BY_CHOSEN_LETTER);
+                        stmt.setString(1, getPrefixPattern(letter));
+                    } else if (choice == Constants.SORT_BY_CHOSEN_FAMILY) {
+                        stmt = pool.prepare(con, COUNT_BY_CHOSEN_FAMILY);
+                        stmt.setString(1, letter);
+                    } else {
+                        stmt = pool.prepare(con, COUNT_ALL);
+                    }
+
+                    ResultSet rs = stmt.executeQuery();
+                    try {
+                        if (rs.next()) {
+                            return new Integer(rs.getInt(1));
+                        }
+                        return new Integer(0);
+                    } finally {
+                        rs.close();
+                    }
+                }
+            });
+        return count.intValue();
+    }
 
-            // For each column in the table,
-            // we want to add an entry to the HashMap
-            // with the same key as the column name
-            for (int i = 1; i <= numberOfColumns; i++) {
-                columnName = rsmd.getColumnName(i);
-                record.put(columnName, rs.getString(columnName));
+    /**
+     * Count the plants whose botanical name begins with each letter,
+     * with one query rather than one for each letter.
+     * Names that don't begin with a letter from a to z are not counted.
+     * @return An array of 26 counts; entry <code>i</code>
+     * is for the letter <code>'a' + i</code>
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static int[] countLetters()
+        throws ClassNotFoundException, SQLException {
+
+        return (int[]) withConnection(new ConnectionWork() {
+                public Object run(final ConnectionPool pool,
+                                  final Connection con)
+                    throws SQLException {
+                    int[] counts = new int[LETTERS];
+                    ResultSet rs =
+                        pool.prepare(con, COUNT_BY_LETTER).executeQuery();
+                    try {
+                        while (rs.next()) {
+                            String letter = rs.getString(1);
+                            if (letter != null && letter.length() == 1
+                                && letter.charAt(0) >= 'a'
+                                && letter.charAt(0) <= 'z') {
+                                counts[letter.charAt(0) - 'a'] =
+                                    rs.getInt(2);
+                            }
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                    return counts;
+                }
+            });
+    }
+
+    /**
+     * Count the plants in each family, with one query
+     * rather than by loading every plant.
+     * Plants without a family are not counted.
+     * @return A <code>List</code> of <code>Facet</code> objects,
+     * in family order
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static List getFamilies()
+        throws ClassNotFoundException, SQLException {
+
+        return (List) withConnection(new ConnectionWork() {
+                public Object run(final ConnectionPool pool,
+                                  final Connection con)
+                    throws SQLException {
+                    List families = new ArrayList();
+                    ResultSet rs =
+                        pool.prepare(con, COUNT_BY_FAMILY).executeQuery();
+                    try {
+                        while (rs.next()) {
+                            families.add(new Facet(rs.getString(1),
+                                                   rs.getInt(2)));
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                    return families;
+                }
+            });
+    }
+
+    /**
+     * Open a cursor that reads the results one plant at a time,
+     * as the database sends them.
+     * Use this instead of <code>getPlants()</code>
+     * when there may be too many results to hold in memory.
+     * The statement is forward-only and read-only,
+     * and its fetch size comes from the <code>cursor.fetchSize</code>
+     * property; the MySQL driver streams rows one at a time
+     * when this is <code>-2147483648</code> (the default).
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @return A <code>PlantCursor</code>, which the caller must close
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static PlantCursor openCursor(final int choice,
+                                         final String letter)
+        throws ClassNotFoundException, SQLException {
+
+        int fetchSize = PropertiesLoader.getInstance()
+            .getInt("cursor.fetchSize", Integer.MIN_VALUE);
+
+        // Borrow a connection from the pool
+        ConnectionPool pool = ConnectionPool.getInstance();
+        Connection con = pool.borrow();
+
+        PlantCursor cursor = null;
+        boolean failed = false;
+        try {
+            // A streaming statement ties up its connection,
+            // so it isn't one of the pool's cached statements
+            PreparedStatement stmt =
+                con.prepareStatement(getSelectString(choice),
+                                     ResultSet.TYPE_FORWARD_ONLY,
+                                     ResultSet.CONCUR_READ_ONLY);
+            try {
+                stmt.setFetchSize(fetchSize);
+                List parameters = getLetterParameters(choice, letter);
+                if (!parameters.isEmpty()) {
+                    stmt.setString(1, (String) parameters.get(0));
+                }
+                cursor = new PlantCursor(pool, con, stmt, stmt.executeQuery());
+            } finally {
+                if (cursor == null) {
+                    stmt.close();
+                }
             }
-            results.add(record);
+        } catch (SQLException sqle) {
+            failed = true;
+            throw sqle;
+        } finally {
+            // Once the cursor has the connection, it gives it back
+            if (cursor == null) {
+                giveBack(pool, con, failed);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Get one plant from the database by its <code>id</code>,
+     * which is the table's primary key.
+     * @param id The plant's <code>id</code>
+     * @return The plant, or <code>null</code> if there is no such plant
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static Plant getPlant(final int id)
+        throws ClassNotFoundException, SQLException {
+        List parameters = new ArrayList();
+        parameters.add(new Integer(id));
+
+        List plants = query(SELECT_BY_ID, parameters);
+        if (plants.isEmpty()) {
+            return null;
         }
+        return (Plant) plants.get(0);
+    }
 
-        // Close the Statement and the Connection
-        stmt.close();
-        con.close();
+    /**
+     * Find the plants whose botanical name, common name, family
+     * or description contain every word in a query, best match first.
+     * Each query word also matches words that begin with it.
+     * The search uses the index that <code>PlantCatalogue</code> keeps,
+     * rather than scanning the table.
+     * @param query The words to look for
+     * @return A <code>List</code> of <code>Plant</code> objects
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static List search(final String query)
+        throws ClassNotFoundException, SQLException {
+        return PlantCatalogue.getInstance().search(query);
+    }
+
+    /**
+     * Get the data from the database as <code>HashMap</code> records,
+     * keyed on the column names, in a <code>Vector</code>.
+     * This is for clients that were written
+     * before <code>getPlants()</code> was available.
+     * @param choice The criteria for sorting the results.
+     * This choice is held in the <code>Constants</code> class.
+     * @param letter The letter or family to use when limiting the search,
+     * should that option be chosen.
+     * @return Vector
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    public static Vector getData(final int choice, final String letter)
+        throws ClassNotFoundException, SQLException {
+
+        List plants = getPlants(choice, letter);
+        Vector results = new Vector(plants.size());
+
+        for (Iterator i = plants.iterator(); i.hasNext();) {
+            results.add(((Plant) i.next()).toMap());
+        }
 
         return results;
     }
 
     /**
-     * <p>Returns the appropriate SQL string for the choice.</p>
+     * <p>Runs a query for plants.</p>
+     * @param sql The SQL to run
+     * @param parameters The values of the SQL's parameters,
+     * which are <code>String</code> or <code>Integer</code> objects
+     * @return A <code>List</code> of <code>Plant</code> objects
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    private static List query(final String sql, final List parameters)
+        throws ClassNotFoundException, SQLException {
+
+        return (List) withConnection(new ConnectionWork() {
+                public Object run(final ConnectionPool pool,
+                                  final Connection con)
+                    throws SQLException {
+                    PreparedStatement stmt = pool.prepare(con, sql);
+
+                    for (int i = 0; i < parameters.size(); i++) {
+                        Object value = parameters.get(i);
+                        if (value instanceof Integer) {
+                            stmt.setInt(i + 1, ((Integer) value).intValue());
+                        } else {
+                            stmt.setString(i + 1, (String) value);
+                        }
+                    }
+
+                    // Now we get the data
+                    List results = new ArrayList();
+                    ResultSet rs = stmt.executeQuery();
+                    try {
+                        // Look up the columns once, rather than once per row
+                        int[] columns = findColumns(rs);
+
+                        while (rs.next()) {
+                            results.add(readPlant(rs, columns));
+                        }
+                    } finally {
+                        // Close the ResultSet.
+                        // The pool keeps the statement open for next time.
+                        rs.close();
+                    }
+                    return results;
+                }
+            });
+    }
+
+    /**
+     * <p>Borrows a connection from the pool, does some work with it
+     * and gives it back, however the work ends.
+     * If the work fails with an <code>SQLException</code>,
+     * the connection may be broken, so it is thrown away
+     * rather than reused.</p>
+     * @param work The work to do
+     * @return Whatever the work returns
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there's a problem with database operations
+     */
+    private static Object withConnection(final ConnectionWork work)
+        throws ClassNotFoundException, SQLException {
+
+        // Borrow a connection from the pool
+        ConnectionPool pool = ConnectionPool.getInstance();
+        Connection con = pool.borrow();
+
+        boolean failed = false;
+        try {
+            return work.run(pool, con);
+        } catch (SQLException sqle) {
+            failed = true;
+            throw sqle;
+        } finally {
+            giveBack(pool, con, failed);
+        }
+    }
+
+    /**
+     * <p>Gives a borrowed connection back to the pool,
+     * or throws it away if it failed.</p>
+     * @param pool The pool
+     * @param con The connection
+     * @param failed Whether a database operation failed
+     */
+    private static void giveBack(final ConnectionPool pool,
+                                 final Connection con,
+                                 final boolean failed) {
+        if (failed) {
+            pool.invalidate(con);
+        } else {
+            pool.release(con);
+        }
+    }
+
+    /**
+     * <p>Returns the parameters for the letter or family search,
+     * if that is the choice.</p>
      * @param choice The user's choice of search criteria.
      * @param letter The letter to use when modifying the search.
-     * @return String
+     * @return A modifiable <code>List</code> of parameter values
      */
-    private static String
-        getSelectString(final int choice, final String letter) {
+    private static List getLetterParameters(final int choice,
+                                            final String letter) {
+        List parameters = new ArrayList();
+        if (choice == Constants.SORT_BY_CHOSEN_LETTER) {
+            parameters.add(getPrefixPattern(letter));
+        } else if (choice == Constants.SORT_BY_CHOSEN_FAMILY) {
+            parameters.add(letter);
+        }
+        return parameters;
+    }
 
-        // This is the default SELECT statement if no arguments are specified
-        String selectString = "SELECT * FROM plants ORDER BY name";
+    /**
+     * <p>Adds a condition that selects the rows after (or before)
+     * a place in a sort order, such as
+     * <code>(name &gt; ? OR (name = ? AND id &gt; ?))</code>.
+     * The <code>common_name</code> column may be <code>null</code>,
+     * and the database puts <code>null</code> values first,
+     * so it needs extra conditions.</p>
+     * @param sql The SQL so far
+     * @param parameters The parameter values so far
+     * @param columns The sort columns
+     * @param values The values of the sort columns at the place
+     * @param i The column to start from
+     * @param forward Whether to select the rows after the place
+     */
+    static void appendSeek(final StringBuffer sql, final List parameters,
+                           final String[] columns, final Object[] values,
+                           final int i, final boolean forward) {
+        String column = columns[i];
+        String compare = forward ? " > ?" : " < ?";
+
+        // The last column is the unique id
+        if (i == columns.length - 1) {
+            sql.append(column).append(compare);
+            parameters.add(values[i]);
+            return;
+        }
+
+        boolean nullable = column.equals("common_name");
+        sql.append('(');
+        if (values[i] == null) {
+            // Only the nulls can come before a null,
+            // and everything else comes after it
+            sql.append(column).append(forward ? " IS NOT NULL OR "
+                                              : " IS NULL AND ");
+        } else {
+            sql.append(column).append(compare).append(" OR ");
+            parameters.add(values[i]);
+            if (nullable && !forward) {
+                sql.append(column).append(" IS NULL OR ");
+            }
+            sql.append('(').append(column).append(" = ? AND ");
+            parameters.add(values[i]);
+        }
+        appendSeek(sql, parameters, columns, values, i + 1, forward);
+        if (values[i] != null) {
+            sql.append(')');
+        }
+        sql.append(')');
+    }
+
+    /**
+     * <p>Adds the <code>ORDER BY</code> clause for a sort order.
+     * The page before a place is read backwards from it,
+     * so the order is reversed.</p>
+     * @param sql The SQL so far
+     * @param columns The sort columns
+     * @param forward Whether the page comes after the place
+     */
+    static void appendOrder(final StringBuffer sql, final String[] columns,
+                            final boolean forward) {
+        sql.append(" ORDER BY ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]);
+            if (!forward) {
+                sql.append(" DESC");
+            }
+        }
+    }
+
+    /**
+     * <p>Finds the positions of the <code>plants</code> columns
+     * in a result set.</p>
+     * @param rs The result set
+     * @return The positions, in the order used by <code>readPlant()</code>
+     * @throws SQLException If a column is missing
+     */
+    static int[] findColumns(final ResultSet rs) throws SQLException {
+        int[] columns = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i] = rs.findColumn(COLUMNS[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * <p>Creates a <code>Plant</code> from the current row
+     * of a result set.</p>
+     * @param rs The result set
+     * @param columns The positions returned by <code>findColumns()</code>
+     * @return Plant
+     * @throws SQLException If the row cannot be read
+     */
+    static Plant readPlant(final ResultSet rs, final int[] columns)
+        throws SQLException {
+        int column = 0;
+        return new Plant(rs.getInt(columns[column++]),
+                         rs.getString(columns[column++]),
+                         rs.getString(columns[column++]),
+                         rs.getString(columns[column++]),
+                         rs.getString(columns[column++]),
+                         rs.getString(columns[column++]),
+                         rs.getString(columns[column++]));
+    }
+
+    /**
+     * <p>Returns the appropriate SQL string for the choice.
+     * The strings never change, so the pool can cache
+     * one prepared statement for each of them.</p>
+     * @param choice The user's choice of search criteria.
+     * @return String
+     */
+    private static String getSelectString(final int choice) {
 
         // Check the type of argument
         if (choice == Constants.SORT_BY_COMMON_NAME) {
             // Order the results by common name
-            selectString = "SELECT * FROM plants ORDER BY common_name";
+            return SELECT_BY_COMMON_NAME;
 
         } else if (choice == Constants.SORT_BY_FAMILY) {
             // Order the results by family, then botanical name
-            selectString = "SELECT * FROM plants ORDER BY family, name";
+            return SELECT_BY_FAMILY;
 
         } else if (choice == Constants.SORT_BY_CHOSEN_LETTER) {
             // The search will only return those plants whose botanical name
             // begins with the specifed letter.
-            selectString = "SELECT * FROM plants WHERE name REGEXP '^"
-                + letter + "'";
+            return SELECT_BY_CHOSEN_LETTER;
+
+        } else if (choice == Constants.SORT_BY_CHOSEN_FAMILY) {
+            // Only the plants in the specified family, by botanical name
+            return SELECT_BY_CHOSEN_FAMILY;
+        }
+
+        // This is the default SELECT statement if no arguments are specified
+        return SELECT_BY_NAME;
+    }
+
+    /**
+     * <p>Turns the letter into a <code>LIKE</code> pattern
+     * that matches names beginning with it.
+     * Any wildcards in the letter are escaped,
+     * so they match themselves.</p>
+     * @param letter The letter to use when modifying the search.
+     * @return String
+     */
+    private static String getPrefixPattern(final String letter) {
+        StringBuffer pattern = new StringBuffer();
+
+        if (letter != null) {
+            for (int i = 0; i < letter.length(); i++) {
+                char c = letter.charAt(i);
+                if (c == '%' || c == '_' || c == '\\') {
+                    pattern.append('\\');
+                }
+                pattern.append(c);
+            }
         }
 
-        return selectString;
+        return pattern.append('%').toString();
+    }
+
+    /**
+     * <p>Work done with a connection borrowed by
+     * <code>withConnection()</code>.</p>
+     */
+    private interface ConnectionWork {
+
+        /**
+         * <p>Does the work.</p>
+         * @param pool The pool the connection was borrowed from
+         * @param con The connection
+         * @return The result of the work
+         * @throws SQLException If there's a problem with database operations
+         */
+        Object run(ConnectionPool pool, Connection con) throws SQLException;
     }
 }
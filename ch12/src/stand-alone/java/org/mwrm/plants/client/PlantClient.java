@@ -16,14 +16,23 @@
 
 package org.mwrm.plants.client;
 
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
 import java.sql.SQLException;
 
-import java.util.HashMap;
-import java.util.Vector;
-import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
 
 import org.mwrm.plants.SelectData;
 import org.mwrm.plants.Constants;
+import org.mwrm.plants.Plant;
+import org.mwrm.plants.PlantCursor;
+import org.mwrm.plants.PlantExporter;
 
 /**
  * <p>The <code>PlantClient</code> class is a command-line client
@@ -35,11 +44,20 @@ import org.mwrm.plants.Constants;
  * <li><code>-n</code> Order by botanical name (default)</li>
  * <li><code>-n [letter]</code> Order by botanical name
  * and limit the search to plants beginning with the specified letter</li>
+ * <li><code>-s words</code> Search the names, families and descriptions
+ * for plants that match all the words, best match first</li>
+ * <li><code>-csv [file]</code> Export every plant as CSV
+ * to the file, or to standard <code>out</code></li>
+ * <li><code>-json [file]</code> Export every plant as JSON Lines
+ * to the file, or to standard <code>out</code></li>
  * </ul>
  */
 
 public final class PlantClient {
 
+    /** The size of the export buffer, in characters. */
+    private static final int BUFFER_SIZE = 65536;
+
     /**
      * <p>A simple constructor.</p>
      */
@@ -48,14 +66,16 @@ public final class PlantClient {
     /**
      * Checks the arguments,
      * then uses the <code>org.mwrm.plants.SelectData</code>
-     * class to get results from the database.
-     * Once it has the results, it displays them to standard <code>out</code>.
+     * class to open a cursor over the results from the database.
+     * It displays each result to standard <code>out</code>
+     * as soon as it arrives.
      * @param args The command-line arguments.
      * @throws ClassNotFoundException If the database driver is not found
      * @throws SQLException If there is a problem with the database
+     * @throws IOException If there is a problem writing an export
      */
     public static void main(final String[] args)
-        throws ClassNotFoundException, SQLException {
+        throws ClassNotFoundException, SQLException, IOException {
 
         // The default choice
         int choice = Constants.SORT_BY_NAME;
@@ -95,47 +115,158 @@ public final class PlantClient {
                     choice = Constants.SORT_BY_CHOSEN_LETTER;
                     letter = args[1];
                 }
+            } else if (args[0].equals("-s")) {
+                // Search for plants by keyword.
+                // Every other argument is a word to search for.
+                StringBuffer query = new StringBuffer();
+                for (int i = 1; i < args.length; i++) {
+                    query.append(args[i]).append(' ');
+                }
+                if (query.toString().trim().length() == 0) {
+                    usage();
+                }
+                search(query.toString());
+                return;
+            } else if (args[0].equals("-csv") || args[0].equals("-json")) {
+                // Export every plant, in botanical name order.
+                // The user can provide a file to export to.
+                String file = null;
+                if (args.length > 1 && !args[1].equals("")) {
+                    file = args[1];
+                }
+                if (args[0].equals("-csv")) {
+                    export(PlantExporter.CSV, file);
+                } else {
+                    export(PlantExporter.JSON_LINES, file);
+                }
+                return;
             } else {
                 // Usage information
                 usage();
             }
         }
 
-        // Obtain the results. This is a Vector of HashMaps
-        Vector results = SelectData.getData(choice, letter);
+        // Read the results as the database sends them,
+        // so that the first plant is shown straight away
+        PlantCursor results = SelectData.openCursor(choice, letter);
 
         // The top of the results display
         System.out.println("\n-----------------------------");
 
+        try {
+            // The number of plants shown so far
+            int count = 0;
+
+            // Iterate over the results
+            while (results.next()) {
+
+                printPlant(results.getPlant());
+                count++;
+            }
+
+            // If there is no data in the results, tell the user
+            if (count == 0) {
+                System.out.println("No results found.");
+                System.out.println("-----------------------------");
+            }
+        } finally {
+            // Give the connection back
+            results.close();
+        }
+    }
+
+    /**
+     * <p>Searches for plants by keyword and prints them,
+     * best match first.</p>
+     * @param query The words to search for
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there is a problem with the database
+     */
+    private static void search(final String query)
+        throws ClassNotFoundException, SQLException {
+
+        List plants = SelectData.search(query);
+
+        // The top of the results display
+        System.out.println("\n-----------------------------");
+
+        for (Iterator i = plants.iterator(); i.hasNext();) {
+            printPlant((Plant) i.next());
+        }
+
         // If there is no data in the results, tell the user
-        if (results.isEmpty()) {
+        if (plants.isEmpty()) {
             System.out.println("No results found.");
             System.out.println("-----------------------------");
-        } else {
+        }
+    }
 
-            // Each record in the database is a HashMap
-            HashMap record = new HashMap();
+    /**
+     * <p>Prints a plant's details.</p>
+     * @param plant The plant
+     */
+    private static void printPlant(final Plant plant) {
+        // The cultivar name is optional
+        String cultivar = "";
 
-            // Iterate over the results
-            for (Enumeration enum = results.elements();
-                 enum.hasMoreElements();) {
+        if (plant.getCultivarName() != null) {
+            cultivar = " '" + plant.getCultivarName() + "'";
+        }
 
-                record = (HashMap) enum.nextElement();
+        System.out.println("Name: " + plant.getName() + cultivar);
+        System.out.println("Common name: " + plant.getCommonName());
+        System.out.println("Family: " + plant.getFamily());
+        System.out.println("Description: " + plant.getDescription());
+        System.out.println("-----------------------------");
+    }
 
-                // The cultivar name is optional
-                String cultivar = "";
+    /**
+     * <p>Exports every plant, streaming them from the database
+     * through a buffered writer.
+     * A summary goes to standard <code>err</code>,
+     * so that it doesn't end up in an export sent to standard
+     * <code>out</code>.</p>
+     * @param format <code>PlantExporter.CSV</code>
+     * or <code>PlantExporter.JSON_LINES</code>
+     * @param file The file to write to,
+     * or <code>null</code> for standard <code>out</code>
+     * @throws ClassNotFoundException If the database driver is not found
+     * @throws SQLException If there is a problem with the database
+     * @throws IOException If there is a problem writing the export
+     */
+    private static void export(final int format, final String file)
+        throws ClassNotFoundException, SQLException, IOException {
 
-                if (!(record.get("cultivar_name") == null)) {
-                    cultivar = " '" + record.get("cultivar_name") + "'";
-                }
+        long start = System.currentTimeMillis();
 
-                System.out.println("Name: " + record.get("name") + cultivar);
-                System.out.println("Common name: " + record.get("common_name"));
-                System.out.println("Family: " + record.get("family"));
-                System.out.println("Description: " + record.get("description"));
-                System.out.println("-----------------------------");
+        // Open the cursor first, so a database that can't be reached
+        // doesn't leave an empty file behind
+        int count = 0;
+        PlantCursor results =
+            SelectData.openCursor(Constants.SORT_BY_NAME, null);
+        try {
+            OutputStream stream = System.out;
+            if (file != null) {
+                stream = new FileOutputStream(file);
             }
+            Writer out =
+                new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"),
+                                   BUFFER_SIZE);
+            try {
+                count = PlantExporter.export(results, out, format);
+            } finally {
+                if (file != null) {
+                    out.close();
+                } else {
+                    out.flush();
+                }
+            }
+        } finally {
+            results.close();
         }
+
+        System.err.println("Exported " + count + " plants in "
+                           + (System.currentTimeMillis() - start) + "ms");
     }
 
     /**
@@ -149,6 +280,10 @@ public final class PlantClient {
         System.out.println("-n [letter] \t Order by botanical name"
                            + " and limit the search to plants ");
         System.out.println("\t\t beginning with the specified letter");
+        System.out.println("-s words \t Search for plants"
+                           + " that match all the words");
+        System.out.println("-csv [file] \t Export every plant as CSV");
+        System.out.println("-json [file] \t Export every plant as JSON Lines");
         System.exit(0);
     }
 }
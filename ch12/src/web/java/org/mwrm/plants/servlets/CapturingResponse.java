@@ -0,0 +1,203 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <p>The <code>CapturingResponse</code> class collects the body
+ * of a response in memory instead of sending it,
+ * so that a servlet can keep a copy of a rendered page.
+ * Headers still go to the wrapped response.</p>
+ *
+ * <p>Once the page has been rendered,
+ * <code>getBody()</code> returns its bytes
+ * and <code>isComplete()</code> says whether it rendered normally.</p>
+ */
+
+final class CapturingResponse extends HttpServletResponseWrapper {
+
+    /** The body of the response. */
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    /** The stream, if the page asked for one. */
+    private ServletOutputStream stream;
+
+    /** The writer, if the page asked for one. */
+    private PrintWriter writer;
+
+    /** The status code. */
+    private int status = SC_OK;
+
+    /**
+     * <p>Wraps a response.</p>
+     * @param response The response to wrap
+     */
+    CapturingResponse(final HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * <p>Returns a stream that writes to memory.</p>
+     * @return ServletOutputStream
+     * @throws IOException If the stream cannot be created
+     */
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has been called");
+        }
+        if (stream == null) {
+            stream = new ServletOutputStream() {
+                    public void write(final int b) {
+                        body.write(b);
+                    }
+
+                    public void write(final byte[] b, final int off,
+                                      final int len) {
+                        body.write(b, off, len);
+                    }
+                };
+        }
+        return stream;
+    }
+
+    /**
+     * <p>Returns a writer that writes to memory,
+     * in the response's character encoding.</p>
+     * @return PrintWriter
+     * @throws IOException If the encoding is not supported
+     */
+    public PrintWriter getWriter() throws IOException {
+        if (stream != null) {
+            throw new IllegalStateException("getOutputStream() has been "
+                                            + "called");
+        }
+        if (writer == null) {
+            String encoding = getCharacterEncoding();
+            writer = new PrintWriter(new OutputStreamWriter(body, encoding));
+        }
+        return writer;
+    }
+
+    /**
+     * <p>Ignores the length of the page,
+     * which the servlet sets once it sends the body.</p>
+     * @param len The length
+     */
+    public void setContentLength(final int len) { }
+
+    /**
+     * <p>Records the status code.</p>
+     * @param sc The status code
+     */
+    public void setStatus(final int sc) {
+        status = sc;
+        super.setStatus(sc);
+    }
+
+    /**
+     * <p>Records the status code of an error.</p>
+     * @param sc The status code
+     * @throws IOException If the error cannot be sent
+     */
+    public void sendError(final int sc) throws IOException {
+        status = sc;
+        super.sendError(sc);
+    }
+
+    /**
+     * <p>Records the status code of an error.</p>
+     * @param sc The status code
+     * @param msg The error message
+     * @throws IOException If the error cannot be sent
+     */
+    public void sendError(final int sc, final String msg) throws IOException {
+        status = sc;
+        super.sendError(sc, msg);
+    }
+
+    /**
+     * <p>Records a redirect, which is never worth keeping.</p>
+     * @param location Where to redirect to
+     * @throws IOException If the redirect cannot be sent
+     */
+    public void sendRedirect(final String location) throws IOException {
+        status = SC_MOVED_TEMPORARILY;
+        super.sendRedirect(location);
+    }
+
+    /**
+     * <p>Pushes anything the page has written into memory.
+     * Nothing is sent to the client.</p>
+     */
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * <p>Throws away anything the page has written.</p>
+     */
+    public void resetBuffer() {
+        flushBuffer();
+        body.reset();
+    }
+
+    /**
+     * <p>Throws away anything the page has written,
+     * along with the headers.</p>
+     */
+    public void reset() {
+        super.reset();
+        resetBuffer();
+        status = SC_OK;
+    }
+
+    /**
+     * <p>The page is never sent while it is being rendered.</p>
+     * @return boolean
+     */
+    public boolean isCommitted() {
+        return false;
+    }
+
+    /**
+     * <p>Checks whether the page rendered normally,
+     * so that it is worth keeping.</p>
+     * @return boolean
+     */
+    boolean isComplete() {
+        return status == SC_OK;
+    }
+
+    /**
+     * <p>Returns the body that the page wrote.</p>
+     * @return byte[]
+     */
+    byte[] getBody() {
+        flushBuffer();
+        return body.toByteArray();
+    }
+}
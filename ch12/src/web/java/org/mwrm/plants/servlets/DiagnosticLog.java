@@ -0,0 +1,190 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.io.PrintStream;
+
+/**
+ * <p>The <code>DiagnosticLog</code> class writes debug messages
+ * on a background thread, so that request threads
+ * never wait for the console.</p>
+ *
+ * <p>Messages go into a fixed-size ring buffer,
+ * and the background thread writes everything in the buffer
+ * in one go. If the buffer is full, new messages are dropped
+ * rather than making the caller wait;
+ * the log counts them and reports how many were lost.</p>
+ */
+
+final class DiagnosticLog {
+
+    /** The messages waiting to be written. */
+    private final String[] buffer;
+
+    /** Where the messages are written. */
+    private final PrintStream out;
+
+    /** The position of the oldest message in the buffer. */
+    private int head;
+
+    /** The number of messages in the buffer. */
+    private int count;
+
+    /** The number of messages written. */
+    private long written;
+
+    /** The number of messages dropped because the buffer was full. */
+    private long dropped;
+
+    /** The number of dropped messages that haven't been reported. */
+    private long unreported;
+
+    /** Whether the log has been closed. */
+    private boolean closed;
+
+    /** The thread that writes the messages. */
+    private final Thread writer;
+
+    /**
+     * <p>Creates a log and starts its writer.</p>
+     * @param name The name of the writer thread
+     * @param stream Where the messages are written
+     * @param capacity The most messages that can wait
+     */
+    DiagnosticLog(final String name, final PrintStream stream,
+                  final int capacity) {
+        this.out = stream;
+        this.buffer = new String[capacity];
+        this.writer = new Thread(name) {
+                public void run() {
+                    drain();
+                }
+            };
+        // The writer must not keep the container running
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * <p>Adds a message to the log, or drops it if the buffer is full.
+     * This never waits for the message to be written.</p>
+     * @param message The message
+     * @return <code>false</code> if the message was dropped
+     */
+    synchronized boolean log(final String message) {
+        if (closed || count == buffer.length) {
+            dropped++;
+            unreported++;
+            return false;
+        }
+        buffer[(head + count) % buffer.length] = message;
+        count++;
+        if (count == 1) {
+            // The writer only waits when the buffer is empty
+            notify();
+        }
+        return true;
+    }
+
+    /**
+     * <p>Writes any waiting messages and stops the writer.</p>
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            notify();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            // The writer is a daemon, so it can be left to finish
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * <p>Returns the number of messages written.</p>
+     * @return long
+     */
+    synchronized long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * <p>Returns the number of messages dropped
+     * because the buffer was full.</p>
+     * @return long
+     */
+    synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * <p>Returns a one-line summary of the log statistics.</p>
+     * @return String
+     */
+    public synchronized String toString() {
+        return "DiagnosticLog[queued=" + count
+            + ", written=" + written
+            + ", dropped=" + dropped + "]";
+    }
+
+    /**
+     * <p>Writes batches of messages until the log is closed
+     * and the buffer is empty.</p>
+     */
+    private void drain() {
+        StringBuffer batch = new StringBuffer();
+        while (true) {
+            long lost;
+            synchronized (this) {
+                while (count == 0 && unreported == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                if (count == 0 && unreported == 0) {
+                    // Closed, and there's nothing left to write
+                    return;
+                }
+
+                // Take everything, so the buffer is free again at once
+                for (int i = 0; i < count; i++) {
+                    int pos = (head + i) % buffer.length;
+                    batch.append(buffer[pos]).append('\n');
+                    buffer[pos] = null;
+                }
+                written += count;
+                head = (head + count) % buffer.length;
+                count = 0;
+                lost = unreported;
+                unreported = 0;
+            }
+
+            if (lost > 0) {
+                batch.append("[").append(lost)
+                    .append(" debug messages dropped]\n");
+            }
+            // One write per batch, outside the lock
+            out.print(batch);
+            out.flush();
+            batch.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.mwrm.plants.PlantExporter;
+
+/**
+ * <p>The <code>JsonResponses</code> class sends the responses
+ * that the JSON servlets have in common.</p>
+ */
+
+final class JsonResponses {
+
+    /**
+     * <p>There are only static methods.</p>
+     */
+    private JsonResponses() { }
+
+    /**
+     * <p>Sends a <code>400</code> response with a JSON error message.</p>
+     *
+     * @param response The response object.
+     * @param message The error message
+     * @throws IOException If there is a problem writing the response
+     */
+    static void sendError(final HttpServletResponse response,
+                          final String message)
+        throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.setContentType("application/json; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        Writer out =
+            new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+        out.write("{\"error\":");
+        PlantExporter.writeJsonString(out, message);
+        out.write('}');
+        out.flush();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.sql.SQLException;
+
+import java.util.Iterator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import javax.servlet.ServletException;
+
+import org.mwrm.plants.Constants;
+import org.mwrm.plants.Plant;
+import org.mwrm.plants.PlantExporter;
+import org.mwrm.plants.PlantPage;
+import org.mwrm.plants.SelectData;
+
+    /**
+     * <p>The JSON client for the plant application.<p>
+     *
+     * <p>Answers <code>GET /api/plants</code> with one page of plants
+     * as a JSON object. It never uses the session,
+     * so any server can answer any request.
+     * The parameters are:</p>
+     *
+     * <ul>
+     * <li><code>sort</code>: <code>common</code>, <code>family</code>
+     * or <code>name</code> (default)</li>
+     * <li><code>letter</code>: Limit the search to plants
+     * whose botanical name begins with this letter</li>
+     * <li><code>cursor</code>: The <code>next</code>, <code>previous</code>
+     * or <code>last</code> value from an earlier page</li>
+     * <li><code>limit</code>: The number of plants on the page
+     * (default 20, at most 100)</li>
+     * </ul>
+     *
+     * <p>The response looks like this:</p>
+     *
+     * <pre>
+     * {"plants":[{"id":1,"name":"...",...},...],
+     *  "previous":null,"next":"...","last":"..."}
+     * </pre>
+     *
+     * <p>The plants are written straight to the response
+     * as they are read from the page, compressed with gzip
+     * if the client accepts it.</p>
+     */
+public class PlantApiServlet extends HttpServlet {
+
+    /** The number of plants on a page if the client doesn't say. */
+    private static final int DEFAULT_LIMIT = 20;
+
+    /** The most plants on a page. */
+    private static final int MAX_LIMIT = 100;
+
+    /** How long clients and proxies may keep a page, in seconds. */
+    private static final int DEFAULT_MAX_AGE = 60;
+
+    /** The size of the response buffer, in characters. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** How long clients and proxies may keep a page, in seconds. */
+    private int maxAge = DEFAULT_MAX_AGE;
+
+    /**
+     * <p>Reads the <code>maxAge</code> servlet initialization parameter,
+     * which says how many seconds clients and proxies may keep a page
+     * (default 60).</p>
+     *
+     * @throws ServletException If the setting cannot be read
+     */
+    public final void init() throws ServletException {
+        String age = getInitParameter("maxAge");
+        if (age != null) {
+            try {
+                maxAge = Integer.parseInt(age.trim());
+            } catch (NumberFormatException nfe) {
+                throw new ServletException("maxAge must be a number: " + age);
+            }
+        }
+    }
+
+    /**
+     * <p>Sends one page of plants as JSON.
+     * Invalid parameters get a <code>400</code> response
+     * with a JSON <code>error</code> message.</p>
+     *
+     * @param request The request object.
+     * @param response The response object.
+     *
+     * @throws ServletException
+     * If there is a problem when processing the request
+     * @throws IOException If there is a problem writing the response
+     */
+    public final void doGet(final HttpServletRequest request,
+                            final HttpServletResponse response)
+        throws ServletException, IOException {
+
+        String sort = request.getParameter("sort");
+        int choice = Constants.SORT_BY_NAME;
+        if ("common".equals(sort)) {
+            choice = Constants.SORT_BY_COMMON_NAME;
+        } else if ("family".equals(sort)) {
+            choice = Constants.SORT_BY_FAMILY;
+        } else if (sort != null && !sort.equals("name")) {
+            JsonResponses.sendError(response,
+                                    "sort must be name, common or family");
+            return;
+        }
+
+        String letter = request.getParameter("letter");
+        if (letter != null && letter.length() > 0) {
+            letter = letter.toLowerCase();
+            choice = Constants.SORT_BY_CHOSEN_LETTER;
+        } else {
+            letter = null;
+        }
+
+        String cursor = request.getParameter("cursor");
+        if (cursor != null && cursor.length() == 0) {
+            cursor = null;
+        }
+
+        int limit = DEFAULT_LIMIT;
+        if (request.getParameter("limit") != null) {
+            try {
+                limit = Integer.parseInt(request.getParameter("limit"));
+            } catch (NumberFormatException nfe) {
+                JsonResponses.sendError(response, "limit must be a number");
+                return;
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                JsonResponses.sendError(response,
+                                        "limit must be between 1 and "
+                                        + MAX_LIMIT);
+                return;
+            }
+        }
+
+        PlantPage page;
+        try {
+            page = SelectData.getPage(choice, letter, cursor, limit);
+        } catch (IllegalArgumentException iae) {
+            // The cursor has been tampered with or is out of date
+            JsonResponses.sendError(response, iae.getMessage());
+            return;
+        } catch (ClassNotFoundException cnfe) {
+            throw new ServletException(cnfe.getMessage());
+        } catch (SQLException sqle) {
+            throw new ServletException(sqle.getMessage());
+        }
+
+        response.setContentType("application/json; charset=UTF-8");
+        // Every server gives the same answer, so anyone may keep it
+        response.setHeader("Cache-Control", "public, max-age=" + maxAge);
+        response.setHeader("Vary", "Accept-Encoding");
+
+        OutputStream stream = response.getOutputStream();
+        GZIPOutputStream gzip = null;
+        if (acceptsGzip(request)) {
+            response.setHeader("Content-Encoding", "gzip");
+            gzip = new GZIPOutputStream(stream);
+            stream = gzip;
+        }
+
+        Writer out =
+            new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"),
+                               BUFFER_SIZE);
+        out.write("{\"plants\":[");
+        for (Iterator i = page.getPlants().iterator(); i.hasNext();) {
+            PlantExporter.writeJson(out, (Plant) i.next());
+            if (i.hasNext()) {
+                out.write(',');
+            }
+        }
+        out.write("],\"previous\":");
+        PlantExporter.writeJsonString(out, page.getPreviousToken());
+        out.write(",\"next\":");
+        PlantExporter.writeJsonString(out, page.getNextToken());
+        out.write(",\"last\":");
+        PlantExporter.writeJsonString(out, page.getLastToken());
+        out.write('}');
+        out.flush();
+
+        if (gzip != null) {
+            // Write the gzip trailer, but leave the container's stream open
+            gzip.finish();
+        }
+    }
+
+    /**
+     * <p>Checks whether the client accepts gzip-compressed responses.</p>
+     *
+     * @param request The request object.
+     * @return boolean
+     */
+    private static boolean acceptsGzip(final HttpServletRequest request) {
+        String accept = request.getHeader("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        String[] codings = accept.split(",");
+        for (int i = 0; i < codings.length; i++) {
+            String coding = codings[i].trim();
+            if (coding.equals("gzip")) {
+                return true;
+            } else if (coding.startsWith("gzip;")) {
+                // "gzip;q=0" means the client doesn't want it
+                return !coding.matches("gzip;\\s*q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
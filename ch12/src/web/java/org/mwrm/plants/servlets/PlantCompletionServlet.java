@@ -0,0 +1,125 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.sql.SQLException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import javax.servlet.ServletException;
+
+import org.mwrm.plants.PlantCatalogue;
+import org.mwrm.plants.PlantExporter;
+
+    /**
+     * <p>The type-ahead client for the plant application.<p>
+     *
+     * <p>Answers <code>GET /api/complete?q=prefix&amp;limit=n</code>
+     * with a JSON array of the botanical and common names
+     * that begin with the prefix, ignoring case,
+     * in alphabetical order. <code>limit</code> defaults to 10
+     * and can be at most 50.</p>
+     *
+     * <p>The names come from the catalogue's prefix index,
+     * which is rebuilt whenever the plants change.</p>
+     */
+public class PlantCompletionServlet extends HttpServlet {
+
+    /** The number of names if the client doesn't say. */
+    private static final int DEFAULT_LIMIT = 10;
+
+    /** The most names that a client can ask for. */
+    private static final int MAX_LIMIT = 50;
+
+    /** How long clients and proxies may keep an answer, in seconds. */
+    private static final int MAX_AGE = 300;
+
+    /**
+     * <p>Sends the names that begin with the <code>q</code> parameter.
+     * An empty or missing prefix gets an empty array;
+     * an invalid <code>limit</code> gets a <code>400</code> response
+     * with a JSON <code>error</code> message.</p>
+     *
+     * @param request The request object.
+     * @param response The response object.
+     *
+     * @throws ServletException
+     * If there is a problem when processing the request
+     * @throws IOException If there is a problem writing the response
+     */
+    public final void doGet(final HttpServletRequest request,
+                            final HttpServletResponse response)
+        throws ServletException, IOException {
+
+        int limit = DEFAULT_LIMIT;
+        if (request.getParameter("limit") != null) {
+            try {
+                limit = Integer.parseInt(request.getParameter("limit"));
+            } catch (NumberFormatException nfe) {
+                JsonResponses.sendError(response, "limit must be a number");
+                return;
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                JsonResponses.sendError(response,
+                                        "limit must be between 1 and "
+                                        + MAX_LIMIT);
+                return;
+            }
+        }
+
+        String prefix = request.getParameter("q");
+        List names;
+        try {
+            if (prefix == null || prefix.trim().length() == 0) {
+                names = Collections.EMPTY_LIST;
+            } else {
+                names = PlantCatalogue.getInstance()
+                    .complete(prefix.trim(), limit);
+            }
+        } catch (ClassNotFoundException cnfe) {
+            throw new ServletException(cnfe.getMessage());
+        } catch (SQLException sqle) {
+            throw new ServletException(sqle.getMessage());
+        }
+
+        response.setContentType("application/json; charset=UTF-8");
+        // Type-ahead asks the same questions over and over
+        response.setHeader("Cache-Control", "public, max-age=" + MAX_AGE);
+
+        Writer out =
+            new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+        out.write('[');
+        for (Iterator i = names.iterator(); i.hasNext();) {
+            PlantExporter.writeJsonString(out, (String) i.next());
+            if (i.hasNext()) {
+                out.write(',');
+            }
+        }
+        out.write(']');
+        out.flush();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.sql.SQLException;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import javax.servlet.ServletException;
+
+import org.mwrm.plants.Plant;
+import org.mwrm.plants.PlantCatalogue;
+import org.mwrm.plants.SelectData;
+
+    /**
+     * <p>The servlet that shows a single plant.<p>
+     *
+     * <p>Extracts the <code>id</code> parameter from the request,
+     * which is the plant's primary key,
+     * and looks the plant up directly,
+     * so the details page doesn't depend on an earlier search
+     * or on the session.</p>
+     */
+public class PlantDetailServlet extends HttpServlet {
+
+    /** The page that displays a plant's details. */
+    private static final String PLANT_PAGE = "/plants/displayPlant.jsp";
+
+    /** Whether plants come from the in-memory catalogue. */
+    private boolean useCatalogue = true;
+
+    /**
+     * <p>Reads the servlet's settings.
+     * If the <code>useCatalogue</code> context parameter
+     * is set to <code>false</code>, each plant is read
+     * from the database instead of the in-memory catalogue.</p>
+     *
+     * @throws ServletException If the settings cannot be read
+     */
+    public final void init() throws ServletException {
+        useCatalogue = WebSettings.useCatalogue(getServletContext());
+    }
+
+    /**
+     * <p>Looks up the plant named by the <code>id</code> parameter
+     * and forwards the request to <code>/plants/displayPlant.jsp</code>
+     * with the plant in the request as "plant".
+     * The catalogue finds the plant in a map keyed on <code>id</code>;
+     * the database finds it with the primary key.</p>
+     *
+     * <p>If there is no <code>id</code> parameter,
+     * the client is sent back to the plants index.
+     * If there is no such plant, the client gets a <code>404</code>.</p>
+     *
+     * @param request The request object.
+     * @param response The response object.
+     *
+     * @throws ServletException
+     * If there is a problem when processing the request
+     * @throws IOException If there is a problem writing the response
+     */
+    public final void doGet(final HttpServletRequest request,
+                            final HttpServletResponse response)
+        throws ServletException, IOException {
+
+        int id;
+        try {
+            id = Integer.parseInt(request.getParameter("id"));
+        } catch (NumberFormatException nfe) {
+            // Includes a missing parameter
+            response.sendRedirect(response.encodeRedirectURL("index.jsp"));
+            return;
+        }
+
+        Plant plant;
+        try {
+            if (useCatalogue) {
+                plant = PlantCatalogue.getInstance().getPlant(id);
+            } else {
+                plant = SelectData.getPlant(id);
+            }
+        } catch (ClassNotFoundException cnfe) {
+            throw new ServletException(cnfe.getMessage());
+        } catch (SQLException sqle) {
+            throw new ServletException(sqle.getMessage());
+        }
+
+        if (plant == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND,
+                               "There is no plant " + id);
+            return;
+        }
+
+        request.setAttribute("plant", plant);
+        getServletContext()
+            .getRequestDispatcher(PLANT_PAGE)
+            .forward(request, response);
+    }
+}
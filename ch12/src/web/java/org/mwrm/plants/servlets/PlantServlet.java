@@ -18,12 +18,15 @@ package org.mwrm.plants.servlets;
 
 import java.sql.SQLException;
 
-import java.util.HashMap;
-import java.util.Vector;
-import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import java.io.IOException;
 
+import java.net.URLEncoder;
+
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,8 +34,13 @@ import javax.servlet.http.HttpSession;
 
 import javax.servlet.ServletException;
 
+import org.mwrm.plants.PlantCatalogue;
 import org.mwrm.plants.SelectData;
 import org.mwrm.plants.Constants;
+import org.mwrm.plants.Plant;
+import org.mwrm.plants.PlantPage;
+
+import org.mwrm.plants.tags.FragmentCache;
 
     /**
      * <p>The servlet client for the plant application.<p>
@@ -48,10 +56,185 @@ import org.mwrm.plants.Constants;
      * </ul>
      *
      * <p>If the client sends a <code>letter</code> parameter,
-     * then the search is limited to records that begin with that letter.</p>
+     * then the search is limited to records that begin with that letter.
+     * A <code>family</code> parameter limits it to the plants
+     * in that family instead.
+     * A <code>q</code> parameter searches the names, families
+     * and descriptions for words instead.</p>
+     *
+     * <p>When the results come from the in-memory catalogue,
+     * each page carries an <code>ETag</code> and a
+     * <code>Last-Modified</code> header based on the catalogue's
+     * version stamp, a client that already has the page gets a
+     * <code>304</code> response, and the servlet keeps recently
+     * rendered pages so it doesn't have to render them again.</p>
+     *
+     * <p>Searches run on a bounded pool of worker threads.
+     * If the pool is full, or a search takes too long,
+     * the client gets a <code>503</code> error straight away.</p>
      */
 public class PlantServlet extends HttpServlet {
 
+    /** The number of results on a page if the context doesn't say. */
+    private static final int DEFAULT_RESULTS_PER_PAGE = 5;
+
+    /** The number of rendered pages kept if the servlet doesn't say. */
+    private static final int DEFAULT_CACHE_SIZE = 100;
+
+    /** The number of worker threads if the servlet doesn't say. */
+    private static final int DEFAULT_WORKER_THREADS = 4;
+
+    /** The number of waiting searches if the servlet doesn't say. */
+    private static final int DEFAULT_QUEUE_SIZE = 20;
+
+    /** How long to wait for a search if the servlet doesn't say. */
+    private static final int DEFAULT_QUERY_TIMEOUT = 5000;
+
+    /** The number of debug messages that can wait to be written. */
+    private static final int DEFAULT_DEBUG_BUFFER_SIZE = 1000;
+
+    /** How long a busy client should wait, in seconds. */
+    private static final int RETRY_AFTER = 5;
+
+    /** The page that displays the results. */
+    private static final String DISPLAY_PAGE = "/plants/displayResults.jsp";
+
+    /** Whether the servlet works without sessions. */
+    private boolean stateless;
+
+    /** Whether the results come from the in-memory catalogue. */
+    private boolean useCatalogue = true;
+
+    /** The number of results on a page. */
+    private int resultsPerPage = DEFAULT_RESULTS_PER_PAGE;
+
+    /**
+     * The rendered pages, by <code>ETag</code>,
+     * or <code>null</code> if pages are not cached.
+     */
+    private PageCache pages;
+
+    /**
+     * The worker threads that run searches,
+     * or <code>null</code> if searches run on the request's thread.
+     */
+    private WorkQueue queue;
+
+    /** How long to wait for a search, in milliseconds. */
+    private long queryTimeout = DEFAULT_QUERY_TIMEOUT;
+
+    /**
+     * The debug output, which is written in the background,
+     * or <code>null</code> if debugging is off.
+     */
+    private DiagnosticLog debugLog;
+
+    /** The number of pages sent from the cache. */
+    private long cacheHits;
+
+    /** The number of pages that had to be rendered. */
+    private long cacheMisses;
+
+    /** The number of <code>304</code> responses. */
+    private long notModified;
+
+    /**
+     * <p>Reads the servlet's settings.
+     * If the <code>useCatalogue</code> context parameter
+     * is set to <code>false</code>, each page of results
+     * is read from the database instead of the in-memory catalogue.
+     * The page size comes from the <code>resultsPerPage</code>
+     * context parameter.
+     * The <code>cacheSize</code> servlet initialization parameter
+     * sets how many rendered pages are kept (default 100);
+     * <code>0</code> turns the cache off.
+     * Pages are only cached when they come from the catalogue.</p>
+     *
+     * <p>If the <code>stateless</code> servlet initialization parameter
+     * is set to <code>true</code>, the servlet never creates a session.
+     * Every link then carries the search, so any server in a cluster
+     * can answer any request without sharing sessions.</p>
+     *
+     * <p>Searches run on a separate pool of worker threads,
+     * so that a slow database can only hold up a fixed number of them.
+     * The <code>workerThreads</code> servlet initialization parameter
+     * sets the number of workers (default 4; <code>0</code> runs
+     * each search on the request's own thread),
+     * <code>queueSize</code> sets how many searches can wait
+     * for a worker (default 20), and <code>queryTimeout</code>
+     * sets how many milliseconds a request waits for its search
+     * (default 5000).</p>
+     *
+     * <p>If the <code>debug</code> servlet initialization parameter
+     * is set to <code>true</code>, debug output is written
+     * to standard <code>out</code> by a background thread.
+     * <code>debugBufferSize</code> sets how many messages
+     * can wait to be written (default 1000);
+     * any more are dropped and counted.</p>
+     *
+     * @throws ServletException If the settings cannot be read
+     */
+    public final void init() throws ServletException {
+        useCatalogue = WebSettings.useCatalogue(getServletContext());
+
+        String noSession = getInitParameter("stateless");
+        if (noSession != null) {
+            stateless = noSession.trim().equals("true");
+        }
+
+        String perPage =
+            getServletContext().getInitParameter("resultsPerPage");
+        if (perPage != null) {
+            try {
+                resultsPerPage = Integer.parseInt(perPage.trim());
+            } catch (NumberFormatException nfe) {
+                throw new ServletException("resultsPerPage must be a number: "
+                                           + perPage);
+            }
+        }
+
+        int cacheSize = getNumber("cacheSize", DEFAULT_CACHE_SIZE);
+        if (useCatalogue && cacheSize > 0) {
+            pages = new PageCache(cacheSize);
+        }
+
+        int threads = getNumber("workerThreads", DEFAULT_WORKER_THREADS);
+        int queueSize = getNumber("queueSize", DEFAULT_QUEUE_SIZE);
+        queryTimeout = getNumber("queryTimeout", DEFAULT_QUERY_TIMEOUT);
+        if (threads > 0) {
+            queue = new WorkQueue(getServletName(), threads, queueSize);
+        }
+
+        String debug = getInitParameter("debug");
+        if (debug != null && debug.trim().equals("true")) {
+            int bufferSize = getNumber("debugBufferSize",
+                                       DEFAULT_DEBUG_BUFFER_SIZE);
+            debugLog = new DiagnosticLog(getServletName() + "-debug",
+                                         System.out, Math.max(bufferSize, 1));
+        }
+    }
+
+    /**
+     * <p>Reads a number from the servlet initialization parameters.</p>
+     *
+     * @param name The name of the parameter
+     * @param defaultValue The value to use if the parameter is not set
+     * @return int
+     * @throws ServletException If the parameter is not a number
+     */
+    private int getNumber(final String name, final int defaultValue)
+        throws ServletException {
+        String value = getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new ServletException(name + " must be a number: " + value);
+        }
+    }
+
     /**
      * <p>Extracts the <code>show</code> parameter from the request
      * to determine what the user wants to see.
@@ -64,18 +247,46 @@ public class PlantServlet extends HttpServlet {
      * </ul>
      *
      * <p>If the client sends a <code>letter</code> parameter,
-     * then the search is limited to records that begin with that letter.</p>
+     * then the search is limited to records that begin with that letter.
+     * If the client sends a <code>family</code> parameter,
+     * the search is limited to the plants in that family.
+     * If the client sends a <code>q</code> parameter,
+     * the results are the plants that match those words,
+     * best match first, whatever the other parameters say.
+     * If the client sends none of these parameters,
+     * the last search in the session is used again,
+     * unless the servlet is stateless.
+     * The <code>start</code> parameter says which result
+     * the page begins with; when the results come from the database,
+     * the <code>page</code> parameter carries a token
+     * from the previous page instead.</p>
      *
      * <p>Once the choice has been extracted,
-     * this servlet uses the <code>org.mwrm.plants.SelectData</code> class
-     * to get results from the database. Once it has the results,
-     * it places them in the session under the name "results"
-     * and forwards the request to <code>/plants/displayPage.jsp</code>,
-     * which displays the first page of the results.</p>
+     * this servlet uses the <code>org.mwrm.plants.PlantCatalogue</code> class
+     * to get one page of results from its in-memory copy of the database,
+     * or the <code>org.mwrm.plants.SelectData</code> class to get it
+     * from the database itself.
+     * Once it has the page, it places it in the request
+     * under the name "results", along with the search parameters,
+     * and forwards the request to <code>/plants/displayResults.jsp</code>,
+     * which displays the page.
+     * Unless the servlet is stateless, the search
+     * is also kept in the session.</p>
+     *
+     * <p>A page from the catalogue is identified by the search,
+     * the first result and the catalogue's version stamp.
+     * If the client's <code>If-None-Match</code> header
+     * names the current page, the servlet sends <code>304</code>
+     * without searching or rendering anything.
+     * Otherwise it sends a copy of the page from its cache if it has one,
+     * or renders the page and keeps a copy.
+     * The search in the session is updated either way,
+     * so the next request without parameters repeats it.</p>
      *
      * <p>If the <code>debug</code> servlet initialization parameter
      * is set to <code>true</code> the results
-     * will also be sent to standard <code>out</code>.</p>
+     * will also be sent to standard <code>out</code>,
+     * by the debug log's background thread.</p>
      *
      * @param request The request object.
      * @param response The response object.
@@ -87,108 +298,187 @@ public class PlantServlet extends HttpServlet {
     public final void doGet(final HttpServletRequest request,
                             final HttpServletResponse response)
         throws ServletException, IOException {
+
+        // Only the search parameters are kept in the session.
+        // In stateless mode, every link carries the search instead.
+        HttpSession session = null;
+        if (!stateless) {
+            session = request.getSession(true);
+        }
+
+        String show = request.getParameter("show");
+        // The letter that the user wants to sort by
+        String letter = request.getParameter("letter");
+        // The family that the user wants to drill down into
+        String family = request.getParameter("family");
+        if (family != null && family.trim().length() == 0) {
+            family = null;
+        }
+        // The words that the user wants to search for
+        String query = request.getParameter("q");
+        if (query != null && query.trim().length() == 0) {
+            query = null;
+        }
+
+        // Moving between pages repeats the last search
+        if (show == null && letter == null && family == null
+            && query == null && session != null) {
+            show = (String) session.getAttribute("show");
+            letter = (String) session.getAttribute("letter");
+            family = (String) session.getAttribute("family");
+            query = (String) session.getAttribute("q");
+        }
+
         // The default choice
         int choice = Constants.SORT_BY_NAME;
 
         // Check the show parameter
         // to see if the user wants to select anything else
-        if (request.getParameter("show").equals("common")) {
+        if ("common".equals(show)) {
             choice = Constants.SORT_BY_COMMON_NAME;
-        } else if (request.getParameter("show").equals("family")) {
+        } else if ("family".equals(show)) {
             choice = Constants.SORT_BY_FAMILY;
         }
 
-        // The results from the database
-        Vector results = null;
-        // The letter that the user wants to sort by
-        String letter = null;
-
         // If the letter parameter is set, then make the appropriate choice
-        if (request.getParameter("letter") != null) {
-            letter = request.getParameter("letter").toLowerCase();
+        if (letter != null) {
+            letter = letter.toLowerCase();
             choice = Constants.SORT_BY_CHOSEN_LETTER;
         }
 
-        // Obtain the results. This is a Vector of HashMaps
+        // The letter, family or search words, whichever applies
+        String text = letter;
+
+        // A family takes the place of a letter
+        if (family != null) {
+            family = family.trim();
+            choice = Constants.SORT_BY_CHOSEN_FAMILY;
+            text = family;
+        }
+
+        // A keyword search takes the place of any other choice
+        if (query != null) {
+            query = query.trim();
+            choice = Constants.SEARCH_BY_KEYWORD;
+            text = query;
+        }
+
+        // The first result on the page
+        int start = 0;
+        if (request.getParameter("start") != null) {
+            try {
+                start = Math.max(0,
+                                 Integer.parseInt(request
+                                                  .getParameter("start")));
+            } catch (NumberFormatException nfe) {
+                start = 0;
+            }
+        }
+
+        // Seek to the page, so deep pages cost the same as the first
+        String token = request.getParameter("page");
+        if (token != null && token.length() == 0) {
+            token = null;
+        }
+
+        // A page from the catalogue can be identified before searching,
+        // so a client that already has it doesn't wait for the search
+        String etag = null;
+        if (pages != null) {
+            long modified;
+            try {
+                // Read the version first, so the page is never older
+                modified = PlantCatalogue.getInstance().getLastModified();
+            } catch (ClassNotFoundException cnfe) {
+                throw new ServletException(cnfe.getMessage());
+            } catch (SQLException sqle) {
+                throw new ServletException(sqle.getMessage());
+            }
+
+            etag = getETag(modified, choice, text, start);
+            response.setHeader("ETag", etag);
+            // HTTP dates only go down to the second
+            response.setDateHeader("Last-Modified", modified / 1000 * 1000);
+            // Caches must check the page with the servlet every time,
+            // since the catalogue may have changed
+            response.setHeader("Cache-Control", "no-cache");
+            if (!stateless) {
+                // The page also depends on the session
+                response.setHeader("Vary", "Cookie");
+            }
+
+            if (matches(request.getHeader("If-None-Match"), etag)) {
+                synchronized (this) {
+                    notModified++;
+                }
+                if (session != null) {
+                    updateSession(session, show, letter, family, query);
+                }
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        Search search = new Search(choice, text, start, token);
         try {
-            results = SelectData.getData(choice, letter);
+            if (queue == null) {
+                search.find();
+            } else if (queue.run(search, queryTimeout)) {
+                search.rethrow();
+            } else {
+                // Don't tie up another thread while the database is slow
+                sendBusy(response);
+                return;
+            }
+        } catch (IllegalArgumentException iae) {
+            // The page token has been tampered with or is out of date
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                               iae.getMessage());
+            return;
+        } catch (InterruptedException ie) {
+            throw new ServletException("Interrupted while searching");
         } catch (ClassNotFoundException cnfe) {
             throw new ServletException(cnfe.getMessage());
         } catch (SQLException sqle) {
             throw new ServletException(sqle.getMessage());
         }
 
-        // The debug servlet initialization parameter sets output options
-        if (getServletConfig().getInitParameter("debug").equals("true")) {
-            // The top of the results display
-            System.out.println("\n-----------------------------");
-
-            // If there is no data in the results, tell the user
-            if (results.isEmpty()) {
-                System.out.println("No results found.");
-                System.out.println("-----------------------------");
-            } else {
+        // The page of results. This is a List of Plants
+        List results = search.results;
+        // The number of results in the whole search
+        int resultsSize = search.resultsSize;
 
-                // Each record in the database is a HashMap
-                HashMap record = new HashMap();
-
-                // Iterate over the results
-                for (Enumeration enum = results.elements();
-                     enum.hasMoreElements();) {
-
-                    // The current record
-                    record = (HashMap) enum.nextElement();
-
-                    // The cultivar name is optional
-                    String cultivar = "";
-
-                    // If the cultivar_name column is present,
-                    // add it to the output string
-                    if (!(record.get("cultivar_name") == null)) {
-                        cultivar = " '" + record.get("cultivar_name") + "'";
-                    }
-
-                    // Print them to standard out
-                    System.out.println("Name: "
-                                       + record.get("name") + cultivar);
-                    System.out.println("Common name: "
-                                       + record.get("common_name"));
-                    System.out.println("Family: "
-                                       + record.get("family"));
-                    System.out.println("Description: "
-                                       + record.get("description"));
-                    System.out.println("Image: "
-                                       + record.get("image"));
-                    System.out.println("-----------------------------");
-                }
-            }
+        if (search.page != null) {
+            // The display page uses these for its links
+            request.setAttribute("previousPage",
+                                 search.page.getPreviousToken());
+            request.setAttribute("nextPage", search.page.getNextToken());
+            request.setAttribute("lastPage", search.page.getLastToken());
         }
 
-        // Now store the results in the session
-        HttpSession session = request.getSession(true);
+        // The debug servlet initialization parameter sets output options
+        if (debugLog != null) {
+            printResults(results);
+        }
 
-        // If the results are empty,
-        // then store a flag to tell the application as such,
-        // then remove the results object so the pages don't try to work with it
-        if (results.isEmpty()) {
-            session.setAttribute("noResults", "true");
-            session.removeAttribute("results");
+        // The pages read the results and the search from the request
+        request.setAttribute("results", results);
+        request.setAttribute("resultsSize", new Integer(resultsSize));
+        request.setAttribute("search", getSearch(choice, text));
 
-            // There are some results,
-            // so place them in the session and remove the noResults flag,
-            // so that the application knows there are results
-        } else {
-            session.setAttribute("results", results);
-            session.removeAttribute("noResults");
+        if (session != null) {
+            updateSession(session, show, letter, family, query);
+        }
 
-            // The pages will need to know the number of results
-            session.setAttribute("resultsSize", "" + results.size() + "");
+        if (pages == null) {
+            // Forward the request to the display page
+            getServletContext()
+                .getRequestDispatcher(DISPLAY_PAGE + "?start=" + start)
+                .forward(request, response);
+            return;
         }
 
-        // Forward the request to the display page
-        getServletContext()
-            .getRequestDispatcher("/plants/displayResults.jsp?start=0")
-            .forward(request, response);
+        sendPage(request, response, etag, start);
     }
 
     /**
@@ -206,4 +496,432 @@ public class PlantServlet extends HttpServlet {
         throws ServletException, IOException {
         doGet(request, response);
     }
+
+    /**
+     * <p>Stops the worker threads and writes any waiting debug output.</p>
+     */
+    public final void destroy() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        if (debugLog != null) {
+            debugLog.close();
+        }
+    }
+
+    /**
+     * <p>Tells the client that the servlet is too busy,
+     * and when to try again.</p>
+     *
+     * @param response The response object.
+     * @throws IOException If there is a problem writing the response
+     */
+    private void sendBusy(final HttpServletResponse response)
+        throws IOException {
+        response.setIntHeader("Retry-After", RETRY_AFTER);
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                           "The plant database is busy");
+    }
+
+    /**
+     * <p>Sends a rendered page from the cache,
+     * or renders it and keeps a copy.</p>
+     *
+     * @param request The request object.
+     * @param response The response object.
+     * @param etag The page's <code>ETag</code>
+     * @param start The first result on the page
+     *
+     * @throws ServletException
+     * If there is a problem when rendering the page
+     * @throws IOException If there is a problem writing the response
+     */
+    private void sendPage(final HttpServletRequest request,
+                          final HttpServletResponse response,
+                          final String etag, final int start)
+        throws ServletException, IOException {
+
+        CachedPage page;
+        synchronized (pages) {
+            page = (CachedPage) pages.get(etag);
+        }
+
+        if (page != null) {
+            synchronized (this) {
+                cacheHits++;
+            }
+            response.setContentType(page.contentType);
+        } else {
+            synchronized (this) {
+                cacheMisses++;
+            }
+
+            CapturingResponse capture = new CapturingResponse(response);
+            getServletContext()
+                .getRequestDispatcher(DISPLAY_PAGE + "?start=" + start)
+                .forward(request, capture);
+            if (!capture.isComplete()) {
+                // The error has already gone to the client
+                return;
+            }
+            page = new CachedPage(capture.getContentType(),
+                                  capture.getBody());
+
+            // Without a cookie, the links on the page
+            // carry this client's session ID, so the page can't be shared
+            if (stateless || request.isRequestedSessionIdFromCookie()) {
+                synchronized (pages) {
+                    pages.put(etag, page);
+                }
+            }
+        }
+
+        response.setContentLength(page.body.length);
+        response.getOutputStream().write(page.body);
+    }
+
+    /**
+     * <p>Works out the <code>ETag</code> for a page of results.
+     * Anything other than letters and digits in the search
+     * is written as hexadecimal, so the tag is always a valid header.</p>
+     *
+     * @param modified The catalogue's version stamp
+     * @param choice The sort choice
+     * @param text The letter, family or search words, or <code>null</code>
+     * @param start The first result on the page
+     * @return The tag, including its quotes
+     */
+    private static String getETag(final long modified, final int choice,
+                                  final String text, final int start) {
+        StringBuffer tag = new StringBuffer("\"");
+        tag.append(Long.toHexString(modified)).append('-').append(choice);
+        tag.append('-');
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c) && c < 128) {
+                    tag.append(c);
+                } else {
+                    tag.append('_').append(Integer.toHexString(c));
+                }
+            }
+        }
+        tag.append('-').append(start).append('"');
+        return tag.toString();
+    }
+
+    /**
+     * <p>Checks whether an <code>If-None-Match</code> header
+     * names a tag.</p>
+     *
+     * @param header The header, or <code>null</code>
+     * @param etag The tag
+     * @return boolean
+     */
+    private static boolean matches(final String header, final String etag) {
+        if (header == null) {
+            return false;
+        }
+        String[] tags = header.split(",");
+        for (int i = 0; i < tags.length; i++) {
+            String tag = tags[i].trim();
+            // The pages are byte-for-byte copies,
+            // so weak tags can be treated as strong ones
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Sends a page of results to the debug log,
+     * as a single message.</p>
+     *
+     * @param results The page of results
+     */
+    private void printResults(final List results) {
+        StringBuffer text = new StringBuffer();
+
+        if (useCatalogue) {
+            // Show how well the catalogue is working
+            text.append('\n').append(PlantCatalogue.getInstance());
+        }
+        if (queue != null) {
+            // Show whether searches are waiting for the database
+            text.append('\n').append(queue);
+        }
+        if (pages != null) {
+            // Show how well the page cache is working
+            synchronized (this) {
+                text.append("\nPageCache[hits=").append(cacheHits)
+                    .append(", misses=").append(cacheMisses)
+                    .append(", notModified=").append(notModified);
+            }
+            synchronized (pages) {
+                text.append(", size=").append(pages.size()).append(']');
+            }
+        }
+        // Show how well the page fragments are being reused
+        text.append('\n')
+            .append(FragmentCache.getInstance(getServletContext()));
+        // Show whether the log is keeping up
+        text.append('\n').append(debugLog);
+
+        // The top of the results display
+        text.append("\n\n-----------------------------");
+
+        // If there is no data in the results, tell the user
+        if (results.isEmpty()) {
+            text.append("\nNo results found.");
+            text.append("\n-----------------------------");
+        } else {
+
+            // Iterate over the results
+            for (Iterator i = results.iterator(); i.hasNext();) {
+
+                // The current record
+                Plant plant = (Plant) i.next();
+
+                // The cultivar name is optional
+                String cultivar = "";
+
+                // If the plant has a cultivar name,
+                // add it to the output string
+                if (plant.getCultivarName() != null) {
+                    cultivar = " '" + plant.getCultivarName() + "'";
+                }
+
+                text.append("\nName: ").append(plant.getName())
+                    .append(cultivar);
+                text.append("\nCommon name: ").append(plant.getCommonName());
+                text.append("\nFamily: ").append(plant.getFamily());
+                text.append("\nDescription: ")
+                    .append(plant.getDescription());
+                text.append("\nImage: ").append(plant.getImage());
+                text.append("\n-----------------------------");
+            }
+        }
+
+        // The log writes it to standard out in the background
+        debugLog.log(text.toString());
+    }
+
+    /**
+     * <p>Writes the search parameters for the links on the results page,
+     * ready to go in a URL. Only the parameters that affect the results
+     * are written, so the same search always gives the same links.</p>
+     *
+     * @param choice The sort choice
+     * @param text The letter, family or search words, or <code>null</code>
+     * @return String
+     * @throws IOException If the text cannot be encoded
+     */
+    private static String getSearch(final int choice, final String text)
+        throws IOException {
+        if (choice == Constants.SEARCH_BY_KEYWORD) {
+            return "q=" + URLEncoder.encode(text, "UTF-8");
+        } else if (choice == Constants.SORT_BY_CHOSEN_LETTER) {
+            return "letter=" + URLEncoder.encode(text, "UTF-8");
+        } else if (choice == Constants.SORT_BY_CHOSEN_FAMILY) {
+            return "family=" + URLEncoder.encode(text, "UTF-8");
+        } else if (choice == Constants.SORT_BY_COMMON_NAME) {
+            return "show=common";
+        } else if (choice == Constants.SORT_BY_FAMILY) {
+            return "show=family";
+        }
+        return "show=name";
+    }
+
+    /**
+     * <p>Keeps the search in the session,
+     * for clients that move between pages without repeating the search.
+     * The results are only kept in the request.</p>
+     *
+     * @param session The session
+     * @param show The <code>show</code> parameter
+     * @param letter The letter, or <code>null</code>
+     * @param family The family, or <code>null</code>
+     * @param query The search words, or <code>null</code>
+     */
+    private static void updateSession(final HttpSession session,
+                                      final String show, final String letter,
+                                      final String family,
+                                      final String query) {
+        // Remember the search, so the next page can repeat it
+        setOrRemove(session, "show", show);
+        setOrRemove(session, "letter", letter);
+        setOrRemove(session, "family", family);
+        setOrRemove(session, "q", query);
+    }
+
+    /**
+     * <p>Stores a value in the session,
+     * or removes the attribute if the value is <code>null</code>.</p>
+     *
+     * @param session The session
+     * @param name The attribute name
+     * @param value The value
+     */
+    private static void setOrRemove(final HttpSession session,
+                                    final String name, final String value) {
+        if (value == null) {
+            session.removeAttribute(name);
+        } else {
+            session.setAttribute(name, value);
+        }
+    }
+
+    /**
+     * <p>A rendered page.</p>
+     */
+    private static final class CachedPage {
+
+        /** The content type of the page. */
+        private final String contentType;
+
+        /** The body of the page. */
+        private final byte[] body;
+
+        /**
+         * <p>Creates a rendered page.</p>
+         * @param type The content type of the page
+         * @param theBody The body of the page
+         */
+        private CachedPage(final String type, final byte[] theBody) {
+            this.contentType = type;
+            this.body = theBody;
+        }
+    }
+
+    /**
+     * <p>The rendered pages, which drops the page
+     * that was used least recently once it is full.</p>
+     */
+    private static final class PageCache extends LinkedHashMap {
+
+        /** The number of pages to keep. */
+        private final int maxSize;
+
+        /**
+         * <p>Creates an empty cache.</p>
+         * @param size The number of pages to keep
+         */
+        private PageCache(final int size) {
+            super(size + 1, 1.0f, true);
+            this.maxSize = size;
+        }
+
+        /**
+         * <p>Drops the oldest page once the cache is full.
+         * Pages from an older catalogue are never asked for again,
+         * so they are dropped this way too.</p>
+         * @param eldest The page that was used least recently
+         * @return boolean
+         */
+        protected boolean removeEldestEntry(final Map.Entry eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * <p>One search, which can be run on a worker thread.</p>
+     */
+    private final class Search extends WorkQueue.Job {
+
+        /** The sort choice. */
+        private final int choice;
+
+        /** The letter, family or search words, or <code>null</code>. */
+        private final String text;
+
+        /** The first result on the page, for the catalogue. */
+        private final int start;
+
+        /** The page token, for the database. */
+        private final String token;
+
+        /** The page of results. This is a List of Plants. */
+        private List results;
+
+        /** The number of results in the whole search. */
+        private int resultsSize;
+
+        /** The page from the database, or <code>null</code>. */
+        private PlantPage page;
+
+        /**
+         * <p>Creates a search.</p>
+         * @param aChoice The sort choice
+         * @param aText The letter, family or search words,
+         * or <code>null</code>
+         * @param aStart The first result on the page
+         * @param aToken The page token, or <code>null</code>
+         */
+        private Search(final int aChoice, final String aText,
+                       final int aStart, final String aToken) {
+            this.choice = aChoice;
+            this.text = aText;
+            this.start = aStart;
+            this.token = aToken;
+        }
+
+        /**
+         * <p>Runs the search on a worker thread.</p>
+         * @throws Exception If the search fails
+         */
+        protected void call() throws Exception {
+            find();
+        }
+
+        /**
+         * <p>Gets the page of results.</p>
+         * @throws ClassNotFoundException If the database driver is not found
+         * @throws SQLException If there is a problem with the database
+         */
+        private void find() throws ClassNotFoundException, SQLException {
+            if (choice == Constants.SEARCH_BY_KEYWORD) {
+                // The search index is in memory either way,
+                // and the results are ranked, so they are paged by position
+                List matches = SelectData.search(text);
+                resultsSize = matches.size();
+                int from = Math.min(start, resultsSize);
+                int to = Math.min(from + resultsPerPage, resultsSize);
+                results = matches.subList(from, to);
+            } else if (useCatalogue) {
+                PlantCatalogue catalogue = PlantCatalogue.getInstance();
+                resultsSize = catalogue.getPlants(choice, text).size();
+                results = catalogue.getPlants(choice, text,
+                                              start, resultsPerPage);
+            } else {
+                page = SelectData.getPage(choice, text, token,
+                                          resultsPerPage);
+                resultsSize = SelectData.countPlants(choice, text);
+                results = page.getPlants();
+            }
+        }
+
+        /**
+         * <p>Throws whatever the search threw on its worker thread.</p>
+         * @throws ClassNotFoundException If the database driver is not found
+         * @throws SQLException If there is a problem with the database
+         */
+        private void rethrow() throws ClassNotFoundException, SQLException {
+            Throwable failure = getFailure();
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) failure;
+            } else if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            } else if (failure != null) {
+                throw new SQLException(failure.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,401 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import javax.servlet.ServletException;
+
+/**
+ * <p>Sends scaled-down copies of the plant pictures.</p>
+ *
+ * <p>Answers <code>GET /thumbnails/name.jpg</code> with the picture
+ * in <code>/images/name.jpg</code>, scaled to fit inside the
+ * <code>width</code> and <code>height</code> servlet initialization
+ * parameters (default 120 by 135) without changing its shape.
+ * Each thumbnail is made once and kept in the container's
+ * temporary directory; it is made again if the picture changes.
+ * If the build has already made a rendition of the picture,
+ * as listed in <code>/images/renditions.properties</code>,
+ * that is sent instead. The <code>rendition</code> parameter
+ * names the rendition to use (default <code>thumb</code>).</p>
+ *
+ * <p>Thumbnails are sent with an <code>ETag</code>,
+ * a <code>Last-Modified</code> header and a <code>Cache-Control</code>
+ * header that lets clients and proxies keep them for the number of
+ * seconds in the <code>maxAge</code> parameter (default a week).
+ * A client that already has the thumbnail gets a <code>304</code>.
+ * The file is copied to the response by its <code>FileChannel</code>,
+ * which leaves the copying to the operating system where it can.</p>
+ */
+public class ThumbnailServlet extends HttpServlet {
+
+    /** The width of a thumbnail if the servlet isn't told. */
+    private static final int DEFAULT_WIDTH = 120;
+
+    /** The height of a thumbnail if the servlet isn't told. */
+    private static final int DEFAULT_HEIGHT = 135;
+
+    /** How long clients may keep a thumbnail, in seconds. */
+    private static final int DEFAULT_MAX_AGE = 604800;
+
+    /** The directory that holds the pictures. */
+    private static final String IMAGES = "/images";
+
+    /** The list of renditions made by the build. */
+    private static final String MANIFEST = IMAGES + "/renditions.properties";
+
+    /** The largest thumbnail width, in pixels. */
+    private int width;
+
+    /** The largest thumbnail height, in pixels. */
+    private int height;
+
+    /** How long clients may keep a thumbnail, in seconds. */
+    private int maxAge;
+
+    /** The directory that holds the thumbnails. */
+    private File thumbnails;
+
+    /** The name of the build's rendition to use. */
+    private String rendition = "thumb";
+
+    /** The renditions made by the build, which may be empty. */
+    private final Properties renditions = new Properties();
+
+    /**
+     * A lock for each picture, so that two requests don't make
+     * the same thumbnail at once but different thumbnails can be made
+     * side by side. There is one for each picture that has been asked
+     * for, so the map is no bigger than the pictures directory.
+     */
+    private final Map locks = new HashMap();
+
+    /**
+     * <p>Reads the servlet's settings and creates
+     * the directory for the thumbnails.</p>
+     *
+     * @throws ServletException If the settings cannot be read
+     */
+    public final void init() throws ServletException {
+        width = getNumber("width", DEFAULT_WIDTH);
+        height = getNumber("height", DEFAULT_HEIGHT);
+        maxAge = getNumber("maxAge", DEFAULT_MAX_AGE);
+
+        File temp = (File) getServletContext()
+            .getAttribute("javax.servlet.context.tempdir");
+        if (temp == null) {
+            temp = new File(System.getProperty("java.io.tmpdir"));
+        }
+        thumbnails = new File(temp, "thumbnails");
+        if (!thumbnails.isDirectory() && !thumbnails.mkdirs()) {
+            throw new ServletException("Cannot create " + thumbnails);
+        }
+
+        if (getInitParameter("rendition") != null) {
+            rendition = getInitParameter("rendition").trim();
+        }
+        InputStream in = getServletContext().getResourceAsStream(MANIFEST);
+        if (in != null) {
+            try {
+                try {
+                    renditions.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ioe) {
+                // Scale the pictures here instead
+                log("Cannot read " + MANIFEST, ioe);
+                renditions.clear();
+            }
+        }
+    }
+
+    /**
+     * <p>Sends the thumbnail of the picture named in the path,
+     * making it first if necessary.
+     * A name that isn't a plain picture file name,
+     * or a picture that doesn't exist, gets a <code>404</code>.</p>
+     *
+     * @param request The request object.
+     * @param response The response object.
+     *
+     * @throws ServletException
+     * If there is a problem when processing the request
+     * @throws IOException If there is a problem writing the response
+     */
+    public final void doGet(final HttpServletRequest request,
+                            final HttpServletResponse response)
+        throws ServletException, IOException {
+
+        String name = request.getPathInfo();
+        if (name != null) {
+            name = name.substring(1);
+        }
+        if (!isImageName(name)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String images = getServletContext().getRealPath(IMAGES);
+        if (images == null) {
+            throw new ServletException("The pictures are not in a directory");
+        }
+        File original = new File(images, name);
+        if (!original.isFile()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        File thumbnail = null;
+        String built = renditions.getProperty(name + "." + rendition);
+        if (built != null) {
+            thumbnail = new File(images, built);
+        }
+        if (thumbnail == null || !thumbnail.isFile()) {
+            thumbnail = getThumbnail(original, name);
+        }
+        if (thumbnail == null) {
+            // Not a picture that we can read
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long modified = thumbnail.lastModified();
+        String etag = "\"" + Long.toHexString(modified) + "-"
+            + Long.toHexString(thumbnail.length()) + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", modified);
+        response.setHeader("Cache-Control", "public, max-age=" + maxAge);
+
+        // HTTP dates only go down to the second
+        String match = request.getHeader("If-None-Match");
+        long since = request.getDateHeader("If-Modified-Since");
+        if ((match != null && match.equals(etag))
+            || (match == null && since >= modified / 1000 * 1000)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(getContentType(thumbnail.getName()));
+        response.setContentLength((int) thumbnail.length());
+
+        FileInputStream in = new FileInputStream(thumbnail);
+        try {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel out =
+                Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position,
+                                               out);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * <p>Returns the thumbnail of a picture, making it if there isn't one
+     * or if the picture has changed since it was made.
+     * A new thumbnail is written to a temporary file and then renamed,
+     * so a request never sees half a thumbnail, and an up-to-date one
+     * is returned without waiting for a lock.</p>
+     *
+     * @param original The picture
+     * @param name The picture's file name
+     * @return The thumbnail, or <code>null</code> if the picture
+     * cannot be read
+     * @throws IOException If the thumbnail cannot be written
+     */
+    private File getThumbnail(final File original, final String name)
+        throws IOException {
+
+        String format = getFormat(name);
+        File thumbnail = new File(thumbnails, width + "x" + height + "-"
+                                  + name + "." + format);
+
+        if (isFresh(thumbnail, original)) {
+            return thumbnail;
+        }
+
+        synchronized (getLock(name)) {
+            // Another request may have made it while we waited
+            if (isFresh(thumbnail, original)) {
+                return thumbnail;
+            }
+
+            BufferedImage picture = ImageIO.read(original);
+            if (picture == null) {
+                return null;
+            }
+
+            // The same sizing as the build's ImageRenditionTask,
+            // so a thumbnail made here matches a rendition made there
+            double scale = Math.min(1.0,
+                Math.min((double) width / picture.getWidth(),
+                         (double) height / picture.getHeight()));
+            int w = Math.max(1, (int) Math.round(picture.getWidth() * scale));
+            int h = Math.max(1,
+                             (int) Math.round(picture.getHeight() * scale));
+
+            // JPEG has no transparency
+            int type = BufferedImage.TYPE_INT_ARGB;
+            if (format.equals("jpg")) {
+                type = BufferedImage.TYPE_INT_RGB;
+            }
+            BufferedImage small = new BufferedImage(w, h, type);
+            Graphics2D graphics = small.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(picture, 0, 0, w, h, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            File temp = File.createTempFile("thumbnail", ".tmp", thumbnails);
+            try {
+                ImageIO.write(small, format, temp);
+                // Windows won't rename over an existing file
+                thumbnail.delete();
+                if (!temp.renameTo(thumbnail)) {
+                    throw new IOException("Cannot create " + thumbnail);
+                }
+            } finally {
+                temp.delete();
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * <p>Checks whether a thumbnail exists and was made
+     * since the picture last changed.</p>
+     *
+     * @param thumbnail The thumbnail
+     * @param original The picture
+     * @return boolean
+     */
+    private static boolean isFresh(final File thumbnail,
+                                   final File original) {
+        return thumbnail.isFile()
+            && thumbnail.lastModified() >= original.lastModified();
+    }
+
+    /**
+     * <p>Returns the lock for making the thumbnail of a picture.</p>
+     *
+     * @param name The picture's file name
+     * @return Object
+     */
+    private Object getLock(final String name) {
+        synchronized (locks) {
+            Object lock = locks.get(name);
+            if (lock == null) {
+                lock = new Object();
+                locks.put(name, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * <p>Checks that a name is a plain picture file name,
+     * with no path in it, so the servlet can't be asked
+     * for files outside the pictures directory.</p>
+     *
+     * @param name The name, which may be <code>null</code>
+     * @return boolean
+     */
+    private static boolean isImageName(final String name) {
+        return name != null
+            && name.matches("[A-Za-z0-9_\\-]+\\.(jpg|jpeg|png|gif)");
+    }
+
+    /**
+     * <p>Returns the format in which the thumbnail of a picture is kept:
+     * <code>jpg</code> for JPEG pictures and <code>png</code> for others,
+     * which may be transparent.</p>
+     *
+     * @param name The picture's file name
+     * @return String
+     */
+    private static String getFormat(final String name) {
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "jpg";
+        }
+        return "png";
+    }
+
+    /**
+     * <p>Returns the content type of the thumbnail of a picture.</p>
+     *
+     * @param name The picture's file name
+     * @return String
+     */
+    private static String getContentType(final String name) {
+        if (getFormat(name).equals("jpg")) {
+            return "image/jpeg";
+        }
+        return "image/png";
+    }
+
+    /**
+     * <p>Reads a number from a servlet initialization parameter.</p>
+     *
+     * @param name The name of the parameter
+     * @param defaultValue The number to use if the parameter is missing
+     * @return int
+     * @throws ServletException If the parameter is not a number
+     */
+    private int getNumber(final String name, final int defaultValue)
+        throws ServletException {
+        String value = getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new ServletException(name + " must be a number: " + value);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import javax.servlet.ServletContext;
+
+/**
+ * <p>The <code>WebSettings</code> class reads the context parameters
+ * that the servlets and the tags share, so that they all agree
+ * on what a setting means.</p>
+ */
+
+public final class WebSettings {
+
+    /**
+     * <p>There are only static methods.</p>
+     */
+    private WebSettings() { }
+
+    /**
+     * <p>Checks whether plants come from the in-memory catalogue.
+     * They do unless the <code>useCatalogue</code> context parameter
+     * is <code>false</code>, in which case they are read
+     * from the database each time.</p>
+     * @param context The servlet context
+     * @return boolean
+     */
+    public static boolean useCatalogue(final ServletContext context) {
+        String value = context.getInitParameter("useCatalogue");
+        return value == null || !value.trim().equals("false");
+    }
+}
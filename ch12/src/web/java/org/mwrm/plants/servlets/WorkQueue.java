@@ -0,0 +1,291 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.servlets;
+
+import java.util.LinkedList;
+
+/**
+ * <p>The <code>WorkQueue</code> class runs jobs on a fixed number
+ * of worker threads, with a limited number of jobs waiting.
+ * A servlet hands its slow work to the queue and waits for it
+ * for a limited time, so that a slow database holds up
+ * no more than a known number of requests,
+ * and the rest are turned away at once instead of piling up
+ * on the container's threads.</p>
+ *
+ * <p>The queue counts the jobs waiting, the jobs running,
+ * and the jobs that finished, were turned away or timed out.</p>
+ */
+
+final class WorkQueue {
+
+    /** The jobs waiting for a worker. */
+    private final LinkedList jobs = new LinkedList();
+
+    /** The most jobs that can wait. */
+    private final int capacity;
+
+    /** The worker threads. */
+    private final Thread[] workers;
+
+    /** The number of jobs being run. */
+    private int inFlight;
+
+    /** The number of jobs that finished. */
+    private long completed;
+
+    /** The number of jobs turned away because the queue was full. */
+    private long rejected;
+
+    /** The number of jobs that the caller stopped waiting for. */
+    private long timedOut;
+
+    /** Whether the queue has been shut down. */
+    private boolean shutdown;
+
+    /**
+     * <p>Creates a queue and starts its workers.</p>
+     * @param name The name of the worker threads
+     * @param threads The number of worker threads
+     * @param aCapacity The most jobs that can wait
+     */
+    WorkQueue(final String name, final int threads, final int aCapacity) {
+        this.capacity = aCapacity;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(name + "-" + i) {
+                    public void run() {
+                        work();
+                    }
+                };
+            // The workers must not keep the container running
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * <p>Adds a job to the queue.</p>
+     * @param job The job
+     * @return <code>false</code> if the queue is full or shut down
+     */
+    synchronized boolean submit(final Job job) {
+        if (shutdown || jobs.size() >= capacity) {
+            rejected++;
+            return false;
+        }
+        jobs.addLast(job);
+        notify();
+        return true;
+    }
+
+    /**
+     * <p>Runs a job and waits for it to finish.
+     * If the job doesn't finish in time, it is taken off the queue
+     * if it hasn't started, or left to finish on its own if it has.</p>
+     * @param job The job
+     * @param timeout How long to wait, in milliseconds
+     * @return <code>false</code> if the queue was full
+     * or the job didn't finish in time
+     * @throws InterruptedException If the thread is interrupted
+     * while it waits
+     */
+    boolean run(final Job job, final long timeout)
+        throws InterruptedException {
+
+        if (!submit(job)) {
+            return false;
+        }
+        if (job.await(timeout)) {
+            return true;
+        }
+        synchronized (this) {
+            timedOut++;
+            // Nobody wants the answer any more
+            jobs.remove(job);
+        }
+        return false;
+    }
+
+    /**
+     * <p>Stops the workers once they finish their current jobs.
+     * Jobs that are still waiting are never run.</p>
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        jobs.clear();
+        notifyAll();
+    }
+
+    /**
+     * <p>Returns the number of jobs waiting for a worker.</p>
+     * @return int
+     */
+    synchronized int getQueueDepth() {
+        return jobs.size();
+    }
+
+    /**
+     * <p>Returns the number of jobs being run.</p>
+     * @return int
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * <p>Returns the number of jobs that finished.</p>
+     * @return long
+     */
+    synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * <p>Returns the number of jobs turned away
+     * because the queue was full.</p>
+     * @return long
+     */
+    synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * <p>Returns the number of jobs that the caller
+     * stopped waiting for.</p>
+     * @return long
+     */
+    synchronized long getTimedOutCount() {
+        return timedOut;
+    }
+
+    /**
+     * <p>Returns a one-line summary of the queue statistics.</p>
+     * @return String
+     */
+    public synchronized String toString() {
+        return "WorkQueue[queued=" + jobs.size()
+            + ", inFlight=" + inFlight
+            + ", completed=" + completed
+            + ", rejected=" + rejected
+            + ", timedOut=" + timedOut + "]";
+    }
+
+    /**
+     * <p>Takes jobs from the queue and runs them
+     * until the queue is shut down.</p>
+     */
+    private void work() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (jobs.isEmpty() && !shutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                if (shutdown) {
+                    return;
+                }
+                job = (Job) jobs.removeFirst();
+                inFlight++;
+            }
+
+            try {
+                job.execute();
+            } catch (Throwable t) {
+                // The job keeps what it threw, so this is only a guard:
+                // a worker that dies is never replaced
+                continue;
+            } finally {
+                synchronized (this) {
+                    inFlight--;
+                    completed++;
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>A piece of work for the queue.
+     * Subclasses put the work in <code>call()</code>;
+     * whatever it throws, including an <code>Error</code>,
+     * is kept for the caller.</p>
+     */
+    abstract static class Job {
+
+        /** Whether the job has finished. */
+        private boolean done;
+
+        /** What the job threw, or <code>null</code>. */
+        private Throwable failure;
+
+        /**
+         * <p>Does the work.</p>
+         * @throws Exception If the work fails
+         */
+        protected abstract void call() throws Exception;
+
+        /**
+         * <p>Returns what the job threw.</p>
+         * @return Throwable, or <code>null</code> if it succeeded
+         */
+        final synchronized Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * <p>Runs the job and tells the caller that it has finished.</p>
+         */
+        private void execute() {
+            Throwable thrown = null;
+            try {
+                call();
+            } catch (Throwable t) {
+                thrown = t;
+            } finally {
+                synchronized (this) {
+                    failure = thrown;
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * <p>Waits for the job to finish.</p>
+         * @param timeout How long to wait, in milliseconds
+         * @return <code>false</code> if the job didn't finish in time
+         * @throws InterruptedException If the thread is interrupted
+         */
+        private synchronized boolean await(final long timeout)
+            throws InterruptedException {
+
+            long end = System.currentTimeMillis() + timeout;
+            while (!done) {
+                long left = end - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                wait(left);
+            }
+            return true;
+        }
+    }
+}
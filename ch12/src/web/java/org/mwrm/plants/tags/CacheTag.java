@@ -0,0 +1,172 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.tags;
+
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.PageContext;
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import java.sql.SQLException;
+
+import org.mwrm.plants.PlantCatalogue;
+import org.mwrm.plants.servlets.WebSettings;
+
+    /**
+     * <p>Renders its body once and sends the same text
+     * to every later request, from the <code>FragmentCache</code>.
+     * The <code>name</code> attribute says which fragment this is
+     * and the optional <code>section</code> attribute says which part
+     * of the site it is for; the client's locale is part of the key too.
+     * If the optional <code>catalogue</code> attribute is
+     * <code>true</code>, the fragment shows plants, so the catalogue's
+     * version is part of the key and a reload renders it again.
+     * The optional <code>timeToLive</code> attribute is the number
+     * of seconds to keep the fragment, for fragments that show data
+     * that can change without the catalogue knowing, such as when the
+     * <code>useCatalogue</code> context parameter is <code>false</code>;
+     * by default it is kept until it is dropped to make room.</p>
+     *
+     * <p>Two requests that miss at the same time both render the body,
+     * and the second copy replaces the first.</p>
+     */
+public class CacheTag extends SimpleTagSupport {
+
+    /** The number of milliseconds in a second. */
+    private static final long SECOND = 1000;
+
+    /**
+     * The name of the fragment.
+     */
+    private String name;
+
+    /**
+     * The section of the site, or <code>null</code>.
+     */
+    private String section;
+
+    /**
+     * How long to keep the fragment in seconds, or 0 for no limit.
+     */
+    private int timeToLive;
+
+    /**
+     * Whether the fragment shows plants from the catalogue.
+     */
+    private boolean catalogue;
+
+    /**
+     * <p>Processes the tag when it is encountered on the page.</p>
+     * @throws JspException
+     * If there is a problem processing the body
+     * or reading the catalogue's version
+     * @throws IOException
+     * If there is a problem writing to the client
+     */
+    public final void doTag() throws JspException, IOException {
+
+        PageContext pageContext = (PageContext) getJspContext();
+        FragmentCache cache =
+            FragmentCache.getInstance(pageContext.getServletContext());
+        String key = FragmentCache.getKey(name, section,
+                                          pageContext.getRequest()
+                                          .getLocale(),
+                                          getVersion(pageContext));
+
+        String text = cache.get(key);
+        if (text == null) {
+            StringWriter body = new StringWriter();
+            if (getJspBody() != null) {
+                getJspBody().invoke(body);
+            }
+            text = body.toString();
+            cache.put(key, text, timeToLive * SECOND);
+        }
+
+        // Write the fragment to the client
+        pageContext.getOut().write(text);
+    }
+
+    /**
+     *
+     * <p>The setter method for the <code>name</code> attribute.</p>
+     *
+     * @param aName The name of the fragment.
+     */
+    public final void setName(final String aName) {
+        this.name = aName;
+    }
+
+    /**
+     *
+     * <p>The setter method for the <code>section</code> attribute.</p>
+     *
+     * @param aSection The section of the site.
+     */
+    public final void setSection(final String aSection) {
+        this.section = aSection;
+    }
+
+    /**
+     *
+     * <p>The setter method for the <code>timeToLive</code> attribute.</p>
+     *
+     * @param seconds How long to keep the fragment, in seconds.
+     */
+    public final void setTimeToLive(final int seconds) {
+        this.timeToLive = seconds;
+    }
+
+    /**
+     *
+     * <p>The setter method for the <code>catalogue</code> attribute.</p>
+     *
+     * @param showsPlants Whether the fragment shows plants
+     * from the catalogue.
+     */
+    public final void setCatalogue(final boolean showsPlants) {
+        this.catalogue = showsPlants;
+    }
+
+    /**
+     * <p>Works out which version of the catalogue the fragment
+     * belongs to.</p>
+     * @param pageContext The page context
+     * @return The catalogue's version, or 0 if the fragment
+     * doesn't show plants or the catalogue isn't used
+     * @throws JspException If the catalogue cannot be loaded
+     */
+    private long getVersion(final PageContext pageContext)
+        throws JspException {
+
+        if (!catalogue) {
+            return 0;
+        }
+        if (!WebSettings.useCatalogue(pageContext.getServletContext())) {
+            return 0;
+        }
+        try {
+            return PlantCatalogue.getInstance().getLastModified();
+        } catch (ClassNotFoundException cnfe) {
+            throw new JspException(cnfe.getMessage());
+        } catch (SQLException sqle) {
+            throw new JspException(sqle.getMessage());
+        }
+    }
+}
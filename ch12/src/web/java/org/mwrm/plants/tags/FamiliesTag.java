@@ -0,0 +1,89 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.tags;
+
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.PageContext;
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+
+import java.io.IOException;
+
+import java.sql.SQLException;
+
+import java.util.List;
+
+import org.mwrm.plants.PlantCatalogue;
+import org.mwrm.plants.SelectData;
+import org.mwrm.plants.servlets.WebSettings;
+
+    /**
+     * <p>Lists the families and the number of plants in each,
+     * so that a page can offer them for drilling down into
+     * without loading every plant.
+     * The <code>var</code> attribute names the page attribute
+     * that receives a <code>List</code> of
+     * <code>org.mwrm.plants.Facet</code> objects, in family order.</p>
+     *
+     * <p>The families come from the in-memory catalogue,
+     * which counts them when it loads the table,
+     * unless the <code>useCatalogue</code> context parameter is
+     * <code>false</code>, in which case they come from a single
+     * <code>GROUP BY</code> query.</p>
+     */
+public class FamiliesTag extends SimpleTagSupport {
+
+    /**
+     * The name of the page attribute that receives the families.
+     */
+    private String var;
+
+    /**
+     * <p>Processes the tag when it is encountered on the page.</p>
+     * @throws JspException
+     * If the families cannot be read
+     * @throws IOException
+     * If there is a problem writing to the client
+     */
+    public final void doTag() throws JspException, IOException {
+
+        PageContext pageContext = (PageContext) getJspContext();
+        List families;
+        try {
+            if (WebSettings.useCatalogue(pageContext.getServletContext())) {
+                families = PlantCatalogue.getInstance().getFamilies();
+            } else {
+                families = SelectData.getFamilies();
+            }
+        } catch (ClassNotFoundException cnfe) {
+            throw new JspException(cnfe.getMessage());
+        } catch (SQLException sqle) {
+            throw new JspException(sqle.getMessage());
+        }
+
+        getJspContext().setAttribute(var, families);
+    }
+
+    /**
+     *
+     * <p>The setter method for the <code>var</code> attribute.</p>
+     *
+     * @param aVar The name of the page attribute for the families.
+     */
+    public final void setVar(final String aVar) {
+        this.var = aVar;
+    }
+}
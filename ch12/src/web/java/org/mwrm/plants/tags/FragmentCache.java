@@ -0,0 +1,220 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.tags;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+    /**
+     * <p>Keeps rendered page fragments, such as the header and the menu,
+     * for the <code>cache</code> tag.
+     * A fragment is keyed on its name, the section of the site,
+     * the client's locale and, for fragments that show plants,
+     * the version of the catalogue they were rendered from.</p>
+     *
+     * <p>The cache holds the number of fragments in the
+     * <code>fragmentCacheSize</code> context parameter (default 50)
+     * and drops the one that was used least recently when it is full.
+     * It counts its hits, misses and evictions,
+     * which <code>toString()</code> reports.</p>
+     */
+public final class FragmentCache {
+
+    /** The number of fragments to keep if the context doesn't say. */
+    private static final int DEFAULT_SIZE = 50;
+
+    /** The single cache for the application. */
+    private static FragmentCache instance;
+
+    /** The fragments, least recently used first. */
+    private final Map fragments;
+
+    /** The number of fragments to keep. */
+    private final int maxSize;
+
+    /** The number of fragments found in the cache. */
+    private long hits;
+
+    /** The number of fragments that had to be rendered. */
+    private long misses;
+
+    /** The number of fragments dropped to make room. */
+    private long evictions;
+
+    /**
+     * <p>Creates an empty cache.</p>
+     * @param size The number of fragments to keep
+     */
+    private FragmentCache(final int size) {
+        this.maxSize = size;
+        this.fragments = new LinkedHashMap(size + 1, 1.0f, true) {
+                protected boolean removeEldestEntry(final Map.Entry eldest) {
+                    if (size() > maxSize) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    }
+
+    /**
+     * <p>Returns the application's cache, creating it the first time
+     * with the size in the <code>fragmentCacheSize</code>
+     * context parameter.</p>
+     * @param context The servlet context
+     * @return FragmentCache
+     */
+    public static synchronized FragmentCache getInstance(
+        final ServletContext context) {
+
+        if (instance == null) {
+            int size = DEFAULT_SIZE;
+            String value = context.getInitParameter("fragmentCacheSize");
+            if (value != null) {
+                try {
+                    size = Integer.parseInt(value.trim());
+                } catch (NumberFormatException nfe) {
+                    size = DEFAULT_SIZE;
+                }
+            }
+            instance = new FragmentCache(size);
+        }
+        return instance;
+    }
+
+    /**
+     * <p>Works out the key for a fragment.</p>
+     * @param name The name of the fragment
+     * @param section The section of the site, or <code>null</code>
+     * @param locale The client's locale, or <code>null</code>
+     * @param version The catalogue's version, or 0 if the fragment
+     * doesn't depend on it
+     * @return String
+     */
+    static String getKey(final String name, final String section,
+                         final Locale locale, final long version) {
+        // None of the parts can contain a null character
+        return name + '\u0000' + section + '\u0000' + locale
+            + '\u0000' + version;
+    }
+
+    /**
+     * <p>Returns a fragment, if the cache has a copy
+     * that hasn't expired.</p>
+     * @param key The key from <code>getKey()</code>
+     * @return The rendered fragment, or <code>null</code>
+     */
+    synchronized String get(final String key) {
+        Fragment fragment = (Fragment) fragments.get(key);
+        if (fragment != null && fragment.expires > 0
+            && fragment.expires < System.currentTimeMillis()) {
+            fragments.remove(key);
+            fragment = null;
+        }
+        if (fragment == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return fragment.text;
+    }
+
+    /**
+     * <p>Keeps a rendered fragment.</p>
+     * @param key The key from <code>getKey()</code>
+     * @param text The rendered fragment
+     * @param timeToLive How long to keep it in milliseconds,
+     * or 0 to keep it until it is dropped to make room
+     */
+    synchronized void put(final String key, final String text,
+                          final long timeToLive) {
+        long expires = 0;
+        if (timeToLive > 0) {
+            expires = System.currentTimeMillis() + timeToLive;
+        }
+        fragments.put(key, new Fragment(text, expires));
+    }
+
+    /**
+     * <p>Throws away every fragment,
+     * so that the next request renders them again.</p>
+     */
+    public synchronized void clear() {
+        fragments.clear();
+    }
+
+    /**
+     * <p>Returns the number of fragments found in the cache.</p>
+     * @return long
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * <p>Returns the number of fragments that had to be rendered.</p>
+     * @return long
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * <p>Returns the number of fragments dropped to make room.</p>
+     * @return long
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * <p>Returns a one-line summary of the cache statistics.</p>
+     * @return String
+     */
+    public synchronized String toString() {
+        return "FragmentCache[hits=" + hits
+            + ", misses=" + misses
+            + ", evictions=" + evictions
+            + ", size=" + fragments.size() + "]";
+    }
+
+    /**
+     * <p>One rendered fragment.</p>
+     */
+    private static final class Fragment {
+
+        /** The rendered fragment. */
+        private final String text;
+
+        /** When the fragment expires, or 0 if it doesn't. */
+        private final long expires;
+
+        /**
+         * <p>Creates a fragment.</p>
+         * @param theText The rendered fragment
+         * @param theExpires When it expires, or 0 if it doesn't
+         */
+        private Fragment(final String theText, final long theExpires) {
+            this.text = theText;
+            this.expires = theExpires;
+        }
+    }
+}
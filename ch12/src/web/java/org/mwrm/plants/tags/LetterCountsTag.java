@@ -0,0 +1,99 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants.tags;
+
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.PageContext;
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+
+import java.io.IOException;
+
+import java.sql.SQLException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mwrm.plants.PlantCatalogue;
+import org.mwrm.plants.SelectData;
+import org.mwrm.plants.servlets.WebSettings;
+
+    /**
+     * <p>Counts the plants whose botanical name begins
+     * with each letter, so that a page can show the counts
+     * and leave out the letters that have no plants.
+     * The <code>var</code> attribute names the page attribute
+     * that receives a <code>Map</code> from each capital letter,
+     * as a <code>String</code>, to an <code>Integer</code> count.</p>
+     *
+     * <p>The counts come from the in-memory catalogue,
+     * which works them out when it loads the table,
+     * unless the <code>useCatalogue</code> context parameter is
+     * <code>false</code>, in which case they come from a single
+     * <code>GROUP BY</code> query.</p>
+     */
+public class LetterCountsTag extends SimpleTagSupport {
+
+    /** The number of letters from A to Z. */
+    private static final int LETTERS = 26;
+
+    /**
+     * The name of the page attribute that receives the counts.
+     */
+    private String var;
+
+    /**
+     * <p>Processes the tag when it is encountered on the page.</p>
+     * @throws JspException
+     * If the counts cannot be read
+     * @throws IOException
+     * If there is a problem writing to the client
+     */
+    public final void doTag() throws JspException, IOException {
+
+        PageContext pageContext = (PageContext) getJspContext();
+        int[] counts;
+        try {
+            if (WebSettings.useCatalogue(pageContext.getServletContext())) {
+                counts = PlantCatalogue.getInstance().getLetterCounts();
+            } else {
+                counts = SelectData.countLetters();
+            }
+        } catch (ClassNotFoundException cnfe) {
+            throw new JspException(cnfe.getMessage());
+        } catch (SQLException sqle) {
+            throw new JspException(sqle.getMessage());
+        }
+
+        Map letters = new HashMap(LETTERS * 2);
+        for (int i = 0; i < LETTERS; i++) {
+            letters.put(String.valueOf((char) ('A' + i)),
+                        new Integer(counts[i]));
+        }
+
+        getJspContext().setAttribute(var, letters);
+    }
+
+    /**
+     *
+     * <p>The setter method for the <code>var</code> attribute.</p>
+     *
+     * @param aVar The name of the page attribute for the counts.
+     */
+    public final void setVar(final String aVar) {
+        this.var = aVar;
+    }
+}
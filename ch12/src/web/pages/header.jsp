@@ -1,5 +1,7 @@
+<%@ page session="false" %>
 <%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
 <%@ taglib uri="/plant-taglib" prefix="tags" %>
+<tags:letterCounts var="letterCounts"/>
 <div class="center">
   <h1>Plant application</h1>
   <p>
@@ -7,10 +9,18 @@
       <c:set var="letter">
         <tags:letters letter="${status}"/>
       </c:set>
+      <c:set var="count" value="${letterCounts[letter]}"/>
 
-      <a class="letters" href="/antBook/plants/listPlants.jsp?show=name&amp;letter=${letter}">
-        ${letter}
-      </a>
+      <c:choose>
+        <c:when test="${count > 0}">
+          <a class="letters" title="${count} plants" href="/antBook/plants/listPlants.jsp?show=name&amp;letter=${letter}">
+            ${letter}
+          </a>
+        </c:when>
+        <c:otherwise>
+          <span class="letters-empty">${letter}</span>
+        </c:otherwise>
+      </c:choose>
     </c:forEach>
   </p>
-</div>
\ No newline at end of file
+</div>
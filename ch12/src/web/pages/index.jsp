@@ -1,3 +1,4 @@
+<%@ page session="false" %>
 <jsp:include page="/template.jsp">
   <jsp:param name="menuSection" value="Home"/>
   <jsp:param name="body" value="/indexBody.jsp"/>
@@ -1 +1,2 @@
+<%@ page session="false" %>
 <p>Welcome to the plant information application.</p>
\ No newline at end of file
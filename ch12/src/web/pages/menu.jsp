@@ -1,3 +1,4 @@
+<%@ page session="false" %>
 <%-- This page is common to the whole application --%>
 <%@ taglib tagdir="/WEB-INF/tags" prefix="tags" %>
 <div class="center">
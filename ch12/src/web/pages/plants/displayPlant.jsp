@@ -1,8 +1,10 @@
+<%@ page session="false" %>
 <%-- JSP Directives --%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
 
+<%-- The plant servlet puts the chosen plant in the request --%>
 <c:choose>
-  <c:when test="${empty sessionScope.results}">
+  <c:when test="${empty requestScope.plant}">
     <c:redirect url="index.jsp"/>
   </c:when>
   
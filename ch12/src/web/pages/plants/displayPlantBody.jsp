@@ -1,16 +1,18 @@
+<%@ page session="false" %>
 <%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
-<c:forEach items="${sessionScope.results}" var="plant"
-           begin="${param.id}" end="${param.id}">
+<c:set var="plant" value="${requestScope.plant}"/>
+<%-- The thumbnail servlet scales the pictures to fit --%>
+<c:if test="${!empty plant}">
   <table>
     <c:choose>
       <c:when test="${!empty plant.image}">
         <tr>
-          <td><img height="135" width="120" border="1" src="/antBook/images/${plant.image}"/></td>
+          <td><img border="1" src="/antBook/thumbnails/${plant.image}"/></td>
         </tr>
       </c:when>
       <c:otherwise>
         <tr>
-          <td><img height="135" width="120" border="1" src="/antBook/images/no_image.jpg"/></td>
+          <td><img border="1" src="/antBook/thumbnails/no_image.jpg"/></td>
         </tr>
       </c:otherwise>
     </c:choose>
@@ -18,14 +20,14 @@
       <td>
         <p>
           Name: <span class="italic"><c:out value="${plant.name}"/></span><br/>
-          Common name: <c:out value="${plant.common_name}"/><br/>
+          Common name: <c:out value="${plant.commonName}"/><br/>
           Family: <c:out value="${plant.family}"/><br/>
           Description: <c:out value="${plant.description}"/><br/>
         </p>
       </td>
     </tr>
   </table>
-</c:forEach>
+</c:if>
 
 <%-- We need to go back to where we came from --%>
 <a href="${header.referer}"/>Back</a>
\ No newline at end of file
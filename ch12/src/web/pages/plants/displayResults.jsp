@@ -1,3 +1,4 @@
+<%@ page session="false" %>
 <jsp:include page="/template.jsp">
   <jsp:param name="menuSection" value="Plants"/>
   <jsp:param name="title" value="Search results"/>
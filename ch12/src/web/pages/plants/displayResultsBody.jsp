@@ -1,63 +1,104 @@
+<%@ page session="false" %>
 <%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
-<c:set var="end" value="${param.start + 4}"/>
+<fmt:parseNumber value="${initParam.resultsPerPage}" var="resultsPerPage"/>
+<c:set var="end" value="${param.start + resultsPerPage - 1}"/>
+<%-- Every link repeats the search, so no session is needed --%>
+<c:set var="list" value="listPlants.jsp?${requestScope.search}"/>
 
 <h1>Search Results</h1>
 
+<%-- The family view offers the families to drill down into --%>
+<c:if test="${requestScope.search eq 'show=family'}">
+  <jsp:include page="/plants/familyFacets.jsp"/>
+</c:if>
+
 <c:choose>
-  <c:when test="${empty sessionScope.results}">
+  <c:when test="${empty requestScope.results}">
     <p>Sorry, there were no results for the search. Please try again.</p>
   </c:when>
 
   <c:otherwise>
     <div class="results">
-      <p>Number of results: <c:out value="${sessionScope.resultsSize}"/></p>
+      <p>Number of results: <c:out value="${requestScope.resultsSize}"/></p>
       <table>
         <tr class="resultRow" valign="top">
           <td>
-            <c:forEach items="${sessionScope.results}" var="item" varStatus="number"
-                       begin="${param.start}" end="${end}">
-              <a class="italic" href="displayPlant.jsp?id=<c:out value="${number.index}"/>"><c:out value="${item.name}"/></a>
+            <%-- The request only holds the current page --%>
+            <c:forEach items="${requestScope.results}" var="item">
+              <%-- Plants are looked up by their primary key --%>
+              <c:url value="showPlant.jsp" var="details">
+                <c:param name="id" value="${item.id}"/>
+              </c:url>
+              <a class="italic" href="<c:out value="${details}"/>"><c:out value="${item.name}"/></a>
               <br/>
-              <c:out value="${item.common_name}"/>
+              <c:out value="${item.commonName}"/>
               <br/>
             </c:forEach>
           </td>
         </tr>
         <tr>
           <td>
-            <fmt:parseNumber value="${initParam.resultsPerPage}" var="resultsPerPage"/>
+            <%-- Each link asks the servlet for another page of the same search --%>
+            <c:choose>
+              <%-- Pages from the database are found with tokens --%>
+              <c:when test="${!empty requestScope.lastPage}">
+                <c:if test="${!empty requestScope.previousPage}">
+                  <c:url value="${list}" var="first"/>
+                  <a href="<c:out value="${first}"/>">First</a>
 
-            <c:if test="${param.start > resultsPerPage}">
-              <c:url value="displayResults.jsp" var="first">
-                <c:param name="start" value="0"/>
-              </c:url>
-              <a href="<c:out value="${first}"/>">First</a>
-            </c:if>
+                  <c:url value="${list}" var="back">
+                    <c:param name="page" value="${requestScope.previousPage}"/>
+                  </c:url>
+                  <a href="<c:out value="${back}"/>">Back</a>
+                </c:if>
 
-            <c:if test="${param.start ne 0}">
-              <c:url value="displayResults.jsp" var="back">
-                <c:param name="start" value="${param.start - 5}"/>
-              </c:url>
-              <a href="<c:out value="${back}"/>">Back</a>
-            </c:if>
+                <c:if test="${!empty requestScope.nextPage}">
+                  <c:url value="${list}" var="next">
+                    <c:param name="page" value="${requestScope.nextPage}"/>
+                  </c:url>
+                  <a href="<c:out value="${next}"/>">Next</a>
 
-            <c:if test="${(sessionScope.resultsSize - end - 1) > 0}">
-              <c:url value="displayResults.jsp" var="next">
-                <c:param name="start" value="${end + 1}"/>
-              </c:url>
-              <a href="<c:out value="${next}"/>">Next</a>
-            </c:if>
+                  <c:url value="${list}" var="last">
+                    <c:param name="page" value="${requestScope.lastPage}"/>
+                  </c:url>
+                  <a href="<c:out value="${last}"/>">Last</a>
+                </c:if>
+              </c:when>
 
-            <c:if test="${(sessionScope.resultsSize - param.start) gt (resultsPerPage * 2)}">
-              <c:url value="displayResults.jsp" var="last">
-                <c:param name="start" value="${sessionScope.resultsSize - (sessionScope.resultsSize mod resultsPerPage)}"/>
-              </c:url>
-              <a href="<c:out value="${last}"/>">Last</a>
-            </c:if>
+              <c:otherwise>
+                <c:if test="${param.start > resultsPerPage}">
+                  <c:url value="${list}" var="first">
+                    <c:param name="start" value="0"/>
+                  </c:url>
+                  <a href="<c:out value="${first}"/>">First</a>
+                </c:if>
+
+                <c:if test="${param.start ne 0}">
+                  <c:url value="${list}" var="back">
+                    <c:param name="start" value="${param.start - resultsPerPage}"/>
+                  </c:url>
+                  <a href="<c:out value="${back}"/>">Back</a>
+                </c:if>
+
+                <c:if test="${(requestScope.resultsSize - end - 1) > 0}">
+                  <c:url value="${list}" var="next">
+                    <c:param name="start" value="${end + 1}"/>
+                  </c:url>
+                  <a href="<c:out value="${next}"/>">Next</a>
+                </c:if>
+
+                <c:if test="${(requestScope.resultsSize - param.start) gt (resultsPerPage * 2)}">
+                  <c:url value="${list}" var="last">
+                    <c:param name="start" value="${(requestScope.resultsSize - 1) - ((requestScope.resultsSize - 1) mod resultsPerPage)}"/>
+                  </c:url>
+                  <a href="<c:out value="${last}"/>">Last</a>
+                </c:if>
+              </c:otherwise>
+            </c:choose>
           </td>
         </tr>
       </table>
     <div/>
   </c:otherwise>
-</c:choose>
\ No newline at end of file
+</c:choose>
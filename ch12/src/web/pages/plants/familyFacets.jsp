@@ -0,0 +1,19 @@
+<%@ page session="false" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
+<%@ taglib uri="/plant-taglib" prefix="tags" %>
+<%-- The families come with their counts, without loading the plants --%>
+<tags:families var="families"/>
+
+<div class="results">
+  <p>Browse by family:</p>
+  <p class="left">
+    <c:forEach items="${families}" var="facet">
+      <c:url value="listPlants.jsp" var="drillDown">
+        <c:param name="family" value="${facet.value}"/>
+      </c:url>
+      <a href="<c:out value="${drillDown}"/>"><c:out value="${facet.value}"/></a>
+      (<c:out value="${facet.count}"/>)
+      <br/>
+    </c:forEach>
+  </p>
+</div>
@@ -1 +1,13 @@
+<%@ page session="false" %>
 <p>Click on a letter above or a link on the left.</p>
+
+<%-- The plant servlet searches names, families and descriptions --%>
+<form action="listPlants.jsp" method="get">
+  <p>
+    Or search for plants:
+    <input type="text" name="q" size="30"/>
+    <input type="submit" value="Search"/>
+  </p>
+</form>
+
+<jsp:include page="/plants/familyFacets.jsp"/>
@@ -1,4 +1,6 @@
+<%@ page session="false" %>
 <%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
+<%@ taglib uri="/plant-taglib" prefix="tags" %>
 <?xml version="1.0"?>
 <!--
 <!DOCTYPE html PUBLIC "-//W3C//DTD XHTML 1.0 Strict//EN"
@@ -15,7 +17,13 @@
   <body>
     <table width="100%">
       <tr>
-        <td><jsp:include page="/header.jsp"/></td>
+        <%-- The header shows the letter counts, so it is rendered again
+             when the catalogue reloads, or every minute without it --%>
+        <td>
+          <tags:cache name="header" catalogue="true" timeToLive="60">
+            <jsp:include page="/header.jsp"/>
+          </tags:cache>
+        </td>
       </tr>
 
       <tr>
@@ -24,9 +32,11 @@
             <tr valign="top" class="template">
 
               <td class="template">
-                <jsp:include page="/menu.jsp">
-                  <jsp:param name="sectionName" value="${param.menuSection}"/>
-                </jsp:include>
+                <tags:cache name="menu" section="${param.menuSection}">
+                  <jsp:include page="/menu.jsp">
+                    <jsp:param name="sectionName" value="${param.menuSection}"/>
+                  </jsp:include>
+                </tags:cache>
               </td>
 
               <td>
@@ -39,7 +49,11 @@
       </tr>
 
       <tr class="footer">
-        <td><jsp:include page="/footer.html"/></td>
+        <td>
+          <tags:cache name="footer">
+            <jsp:include page="/footer.html"/>
+          </tags:cache>
+        </td>
       </tr>
     </table>
 
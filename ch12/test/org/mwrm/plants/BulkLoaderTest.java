@@ -0,0 +1,359 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests the CSV and SQL reading and the batching
+ * of the bulk loader.
+ * The loader talks to a fake connection,
+ * which records the rows instead of sending them to a database.</p>
+ */
+public class BulkLoaderTest extends TestCase {
+
+    /** The CSV header for every column. */
+    private static final String HEADER =
+        "id,name,common_name,family,description,image,cultivar_name\n";
+
+    /** The fake connection. */
+    private FakeConnection fake;
+
+    /** The loader under test. */
+    private BulkLoader loader;
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public BulkLoaderTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Creates a loader with a fake connection.</p>
+     */
+    protected final void setUp() {
+        fake = new FakeConnection();
+        loader = new BulkLoader(fake.getConnection());
+    }
+
+    /**
+     * <p>Checks quoted commas, doubled quotes and line breaks
+     * inside quoted fields, and that empty fields are loaded
+     * as <code>NULL</code>.</p>
+     * @throws Exception If the loader fails
+     */
+    public final void testCsvQuoting() throws Exception {
+        String csv = HEADER
+            + "1,Rosa canina,\"Dog rose, briar\",Rosaceae,"
+            + "\"Called \"\"dog\"\"\nrose\",,\n";
+        assertEquals(1, loader.load(new StringReader(csv), BulkLoader.CSV));
+
+        String[] row = fake.getRow(0);
+        assertEquals("1", row[0]);
+        assertEquals("Dog rose, briar", row[2]);
+        assertEquals("Called \"dog\"\nrose", row[4]);
+        assertNull("Empty field not NULL", row[5]);
+        assertNull("Empty last field not NULL", row[6]);
+    }
+
+    /**
+     * <p>Checks CRLF line breaks and blank lines.</p>
+     * @throws Exception If the loader fails
+     */
+    public final void testCsvLineBreaks() throws Exception {
+        String csv = "name,family,description\r\n"
+            + "Rosa canina,Rosaceae,A rose\r\n"
+            + "\r\n"
+            + "Iris pseudacorus,Iridaceae,An iris\r\n";
+        assertEquals(2, loader.load(new StringReader(csv), BulkLoader.CSV));
+        assertEquals("A rose", fake.getRow(0)[2]);
+        assertEquals("Iris pseudacorus", fake.getRow(1)[0]);
+    }
+
+    /**
+     * <p>Checks that a row with the wrong number of fields is rejected.</p>
+     * @throws Exception If the loader fails in the wrong way
+     */
+    public final void testCsvWrongFieldCount() throws Exception {
+        String csv = "name,family,description\nRosa canina,Rosaceae\n";
+        try {
+            loader.load(new StringReader(csv), BulkLoader.CSV);
+            fail("Short row accepted");
+        } catch (IOException ioe) {
+            assertEquals("Short row not rolled back", 1, fake.rollbacks);
+        }
+    }
+
+    /**
+     * <p>Checks that a CSV column that isn't a plant column
+     * is rejected before it reaches the SQL.</p>
+     * @throws Exception If the loader fails in the wrong way
+     */
+    public final void testCsvUnknownColumn() throws Exception {
+        String csv = "name,family,description,price\na,b,c,d\n";
+        try {
+            loader.load(new StringReader(csv), BulkLoader.CSV);
+            fail("Unknown column accepted");
+        } catch (IOException ioe) {
+            assertEquals(0, fake.statements.size());
+        }
+    }
+
+    /**
+     * <p>Checks string escapes, doubled quotes, <code>NULL</code>,
+     * semicolons in strings and rows with several values.</p>
+     * @throws Exception If the loader fails
+     */
+    public final void testSqlValues() throws Exception {
+        String sql = "INSERT INTO plants (name, family, description, image)"
+            + " VALUES (\"Lent lily; daffodil\", 'Liliaceae',"
+            + " 'It''s a \\\"bulb\\\"\\n', NULL),\n"
+            + "  ('Iris', \"Iridaceae\", \"Flag\", 'iri.jpg');\n";
+        assertEquals(2, loader.load(new StringReader(sql), BulkLoader.SQL));
+
+        String[] row = fake.getRow(0);
+        assertEquals("Lent lily; daffodil", row[0]);
+        assertEquals("It's a \"bulb\"\n", row[2]);
+        assertNull("NULL not loaded as NULL", row[3]);
+        assertEquals("iri.jpg", fake.getRow(1)[3]);
+    }
+
+    /**
+     * <p>Checks that comment lines and <code>USE</code> statements
+     * are skipped.</p>
+     * @throws Exception If the loader fails
+     */
+    public final void testSqlComments() throws Exception {
+        String sql = "-- The sample plants\n"
+            + "# Another comment; with a semicolon\n"
+            + "USE plants;\n\n"
+            + "INSERT INTO `plants` (name, family, description)"
+            + " VALUES ('Iris', 'Iridaceae', '-- not a comment');\n";
+        assertEquals(1, loader.load(new StringReader(sql), BulkLoader.SQL));
+        assertEquals("-- not a comment", fake.getRow(0)[2]);
+    }
+
+    /**
+     * <p>Checks that other statements and unknown columns
+     * are rejected.</p>
+     * @throws Exception If the loader fails in the wrong way
+     */
+    public final void testSqlRejected() throws Exception {
+        String[] bad = {
+            "DELETE FROM plants;",
+            "INSERT INTO users (name) VALUES ('x');",
+            "INSERT INTO plants (name, price) VALUES ('x', 1);",
+            "INSERT INTO plants (name, family) VALUES ('x');"
+        };
+        for (int i = 0; i < bad.length; i++) {
+            try {
+                loader.load(new StringReader(bad[i]), BulkLoader.SQL);
+                fail("Accepted " + bad[i]);
+            } catch (IOException ioe) {
+                // This is what we want
+                assertTrue(ioe.getMessage() != null);
+            }
+        }
+        assertEquals(0, fake.rows.size());
+    }
+
+    /**
+     * <p>Checks that rows are sent in batches and committed
+     * in chunks, and that rows with different columns
+     * share the open inserts.</p>
+     * @throws Exception If the loader fails
+     */
+    public final void testBatching() throws Exception {
+        StringBuffer sql = new StringBuffer();
+        for (int i = 0; i < 7; i++) {
+            if (i % 2 == 0) {
+                sql.append("INSERT INTO plants (name, family, description)"
+                           + " VALUES ('p").append(i).append("', 'f', 'd');\n");
+            } else {
+                sql.append("INSERT INTO plants (name, family, description,"
+                           + " image) VALUES ('p").append(i)
+                    .append("', 'f', 'd', 'i.jpg');\n");
+            }
+        }
+        loader.setBatchSize(4);
+        loader.setCommitInterval(6);
+        assertEquals(7, loader.load(new StringReader(sql.toString()),
+                                    BulkLoader.SQL));
+
+        assertEquals("One insert for each column list",
+                     2, fake.statements.size());
+        assertEquals(7, fake.rows.size());
+        // Flushed after rows 4 and 6, with a batch for each column list,
+        // then at the end, when only the first column list has a row
+        assertEquals(5, fake.batches);
+        assertEquals(2, fake.commits);
+        assertTrue("Auto-commit not restored", fake.autoCommit);
+        assertEquals(7, loader.getRowCount());
+    }
+
+    /**
+     * <p>A connection that records what the loader does with it.</p>
+     */
+    private static final class FakeConnection implements InvocationHandler {
+
+        /** The SQL of each prepared statement. */
+        private final List statements = new ArrayList();
+
+        /** The rows added to batches. This is a List of String[]s. */
+        private final List rows = new ArrayList();
+
+        /** The values of the row being set up. */
+        private final List current = new ArrayList();
+
+        /** The number of batches sent. */
+        private int batches;
+
+        /** The number of commits. */
+        private int commits;
+
+        /** The number of rollbacks. */
+        private int rollbacks;
+
+        /** Whether the connection is in auto-commit mode. */
+        private boolean autoCommit = true;
+
+        /**
+         * <p>Returns the fake as a <code>Connection</code>.</p>
+         * @return Connection
+         */
+        private Connection getConnection() {
+            return (Connection) newProxy(Connection.class, this);
+        }
+
+        /**
+         * <p>Returns a row that was added to a batch.</p>
+         * @param i The row number, from 0
+         * @return String[]
+         */
+        private String[] getRow(final int i) {
+            return (String[]) rows.get(i);
+        }
+
+        /**
+         * <p>Answers a call on the connection.</p>
+         * @param proxy The proxy
+         * @param method The method
+         * @param args The arguments
+         * @return The result
+         */
+        public Object invoke(final Object proxy, final Method method,
+                             final Object[] args) {
+            String name = method.getName();
+            if (name.equals("prepareStatement")) {
+                statements.add(args[0]);
+                return newProxy(PreparedStatement.class, new Statement());
+            } else if (name.equals("getAutoCommit")) {
+                return Boolean.valueOf(autoCommit);
+            } else if (name.equals("setAutoCommit")) {
+                autoCommit = ((Boolean) args[0]).booleanValue();
+            } else if (name.equals("commit")) {
+                commits++;
+            } else if (name.equals("rollback")) {
+                rollbacks++;
+            }
+            return identity(proxy, name, args);
+        }
+
+        /**
+         * <p>A prepared statement that records its rows.</p>
+         */
+        private final class Statement implements InvocationHandler {
+
+            /**
+             * <p>Answers a call on the statement.</p>
+             * @param proxy The proxy
+             * @param method The method
+             * @param args The arguments
+             * @return The result
+             */
+            public Object invoke(final Object proxy, final Method method,
+                                 final Object[] args) {
+                String name = method.getName();
+                if (name.equals("setString") || name.equals("setNull")) {
+                    int i = ((Integer) args[0]).intValue() - 1;
+                    while (current.size() <= i) {
+                        current.add(null);
+                    }
+                    if (name.equals("setString")) {
+                        current.set(i, args[1]);
+                    }
+                } else if (name.equals("addBatch")) {
+                    rows.add(current.toArray(new String[current.size()]));
+                    current.clear();
+                } else if (name.equals("executeBatch")) {
+                    batches++;
+                    return new int[0];
+                }
+                return identity(proxy, name, args);
+            }
+        }
+
+        /**
+         * <p>Makes a proxy for an interface.</p>
+         * @param type The interface
+         * @param handler The handler for its calls
+         * @return Object
+         */
+        private static Object newProxy(final Class type,
+                                       final InvocationHandler handler) {
+            return Proxy.newProxyInstance(type.getClassLoader(),
+                                          new Class[] {type}, handler);
+        }
+
+        /**
+         * <p>Answers the <code>Object</code> methods,
+         * and returns <code>null</code> for anything else.</p>
+         * @param proxy The proxy
+         * @param name The method name
+         * @param args The arguments
+         * @return The result
+         */
+        private static Object identity(final Object proxy, final String name,
+                                       final Object[] args) {
+            if (name.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if (name.equals("hashCode")) {
+                return new Integer(System.identityHashCode(proxy));
+            } else if (name.equals("toString")) {
+                return "fake";
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests writing and reading the page tokens
+ * that mark a place in a sort order.</p>
+ */
+public class PageTokenTest extends TestCase {
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public PageTokenTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Checks that a token reads back as it was written,
+     * including values with the token's own separators in them
+     * and values outside ASCII.</p>
+     */
+    public final void testRoundTrip() {
+        Plant plant = new Plant(42, "Rosa 'Albertine'", "Rose: 12.5 cm",
+                                "Ros\u00e6ceae", null, null, null);
+        PageToken token = PageToken.after(Constants.SORT_BY_FAMILY, plant);
+        String text = token.encode();
+        assertTrue("Not safe for a URL: " + text,
+                   text.matches("[0-9a-f]+"));
+
+        PageToken read = PageToken.decode(text);
+        assertEquals(Constants.SORT_BY_FAMILY, read.getChoice());
+        assertTrue(read.isForward());
+        assertTrue(!read.isEdge());
+        Object[] values = read.getValues();
+        assertEquals(3, values.length);
+        assertEquals("Ros\u00e6ceae", values[0]);
+        assertEquals("Rosa 'Albertine'", values[1]);
+        assertEquals(new Integer(42), values[2]);
+    }
+
+    /**
+     * <p>Checks that a <code>null</code> common name
+     * is kept apart from the text of the null marker.</p>
+     */
+    public final void testNullValue() {
+        Plant none = new Plant(7, "Iris", null, "Iridaceae",
+                               null, null, null);
+        Plant tilde = new Plant(8, "Iris", "~", "Iridaceae",
+                                null, null, null);
+
+        PageToken read = PageToken.decode(
+            PageToken.before(Constants.SORT_BY_COMMON_NAME, none).encode());
+        assertTrue(!read.isForward());
+        assertNull(read.getValues()[0]);
+        assertEquals(new Integer(7), read.getValues()[1]);
+
+        read = PageToken.decode(
+            PageToken.before(Constants.SORT_BY_COMMON_NAME, tilde).encode());
+        assertEquals("~", read.getValues()[0]);
+    }
+
+    /**
+     * <p>Checks the tokens for the start and the end of an order.</p>
+     */
+    public final void testEdges() {
+        PageToken first = PageToken.decode(
+            PageToken.first(Constants.SORT_BY_NAME).encode());
+        assertTrue(first.isEdge());
+        assertTrue(first.isForward());
+
+        PageToken last = PageToken.decode(
+            PageToken.last(Constants.SORT_BY_NAME).encode());
+        assertTrue(last.isEdge());
+        assertTrue(!last.isForward());
+    }
+
+    /**
+     * <p>Checks that broken or altered tokens are rejected
+     * with an <code>IllegalArgumentException</code>,
+     * which the servlet turns into a bad request.</p>
+     */
+    public final void testMalformed() {
+        Plant plant = new Plant(3, "Iris", null, "Iridaceae",
+                                null, null, null);
+        String good = PageToken.after(Constants.SORT_BY_NAME, plant).encode();
+        String[] bad = {
+            "",
+            "abc",
+            "zz",
+            good.substring(0, good.length() - 2),
+            good + "00",
+            // "1x3", an unknown direction
+            hex("1x3"),
+            // "1a3:9.Iris", a length past the end
+            hex("1a3:9.Iris"),
+            // "1a3;4.Iris", a wrong separator
+            hex("1a3;4.Iris"),
+            // "1a3:-1.Iris", a negative length
+            hex("1a3:-1.Iris"),
+            // "1aX:4.Iris", an id that isn't a number
+            hex("1aX:4.Iris")
+        };
+        for (int i = 0; i < bad.length; i++) {
+            try {
+                PageToken.decode(bad[i]);
+                fail("Accepted \"" + bad[i] + "\"");
+            } catch (IllegalArgumentException iae) {
+                // This is what we want
+                assertNotNull(iae.getMessage());
+            }
+        }
+    }
+
+    /**
+     * <p>Writes ASCII text as hexadecimal, the way tokens are written.</p>
+     * @param text The text
+     * @return String
+     */
+    private static String hex(final String text) {
+        StringBuffer hex = new StringBuffer();
+        for (int i = 0; i < text.length(); i++) {
+            String digits = Integer.toHexString(text.charAt(i));
+            if (digits.length() < 2) {
+                hex.append('0');
+            }
+            hex.append(digits);
+        }
+        return hex.toString();
+    }
+}
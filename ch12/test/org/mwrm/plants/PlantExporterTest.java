@@ -0,0 +1,111 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests the quoting and escaping of the CSV and JSON exports.</p>
+ */
+public class PlantExporterTest extends TestCase {
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public PlantExporterTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Checks the CSV header row.</p>
+     * @throws IOException If the writer fails
+     */
+    public final void testCsvHeader() throws IOException {
+        StringWriter out = new StringWriter();
+        PlantExporter.writeCsvHeader(out);
+        assertEquals("id,name,common_name,family,description,image,"
+                     + "cultivar_name\n", out.toString());
+    }
+
+    /**
+     * <p>Checks that only fields with commas, quotes or line breaks
+     * are quoted, that quotes are doubled,
+     * and that <code>null</code> values are empty.</p>
+     * @throws IOException If the writer fails
+     */
+    public final void testCsvQuoting() throws IOException {
+        Plant plant = new Plant(7, "Rosa canina", "Dog rose, briar",
+                                "Rosaceae", "Called \"dog\"\r\nrose",
+                                null, "it's");
+        StringWriter out = new StringWriter();
+        PlantExporter.writeCsv(out, plant);
+        assertEquals("7,Rosa canina,\"Dog rose, briar\",Rosaceae,"
+                     + "\"Called \"\"dog\"\"\r\nrose\",,it's",
+                     out.toString());
+    }
+
+    /**
+     * <p>Checks the JSON object for a plant:
+     * the <code>id</code> is a number
+     * and missing values are <code>null</code>.</p>
+     * @throws IOException If the writer fails
+     */
+    public final void testJson() throws IOException {
+        Plant plant = new Plant(7, "Iris", null, "Iridaceae",
+                                "A flag", "iris.jpg", null);
+        StringWriter out = new StringWriter();
+        PlantExporter.writeJson(out, plant);
+        assertEquals("{\"id\":7,\"name\":\"Iris\",\"common_name\":null,"
+                     + "\"family\":\"Iridaceae\",\"description\":\"A flag\","
+                     + "\"image\":\"iris.jpg\",\"cultivar_name\":null}",
+                     out.toString());
+    }
+
+    /**
+     * <p>Checks the escapes in JSON strings, including control
+     * characters and the line separators that upset JavaScript,
+     * and that other characters are written as they are.</p>
+     * @throws IOException If the writer fails
+     */
+    public final void testJsonEscapes() throws IOException {
+        assertEquals("\"\\\"q\\\" \\\\ \\n\\r\\t\"",
+                     json("\"q\" \\ \n\r\t"));
+        assertEquals("\"\\u0000\\u001f\\u2028\\u2029\"",
+                     json("\u0000\u001f\u2028\u2029"));
+        assertEquals("\"Ros\u00e6ceae / caf\u00e9 \u007f\"",
+                     json("Ros\u00e6ceae / caf\u00e9 \u007f"));
+        assertEquals("\"\"", json(""));
+        assertEquals("null", json(null));
+    }
+
+    /**
+     * <p>Writes a string as JSON.</p>
+     * @param value The string
+     * @return The JSON
+     * @throws IOException If the writer fails
+     */
+    private static String json(final String value) throws IOException {
+        StringWriter out = new StringWriter();
+        PlantExporter.writeJsonString(out, value);
+        return out.toString();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests the sort orders and the letter and family ranges
+ * of the in-memory index.</p>
+ */
+public class PlantIndexTest extends TestCase {
+
+    /** The index under test. */
+    private PlantIndex index;
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public PlantIndexTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Creates an index of a few plants, in no particular order,
+     * with names in mixed case, a shared name
+     * and missing common names and families.</p>
+     */
+    protected final void setUp() {
+        index = new PlantIndex(new Plant[] {
+            plant(1, "Rosa canina", "Dog rose", "Rosaceae"),
+            plant(2, "rosa rugosa", null, "Rosaceae"),
+            plant(3, "Iris", "Flag", "Iridaceae"),
+            plant(4, "Allium", null, null),
+            plant(5, "Rosa canina", "Briar", "rosaceae"),
+            plant(6, "Zea", "Corn", "Poaceae")
+        });
+    }
+
+    /**
+     * <p>Checks the three sort orders: case doesn't matter,
+     * <code>null</code> values come first as in the database,
+     * and ties are broken on the <code>id</code>.</p>
+     */
+    public final void testOrders() {
+        assertEquals("4 3 1 5 2 6 ",
+                     ids(index.getPlants(Constants.SORT_BY_NAME, null)));
+        assertEquals("2 4 5 6 1 3 ",
+                     ids(index.getPlants(Constants.SORT_BY_COMMON_NAME,
+                                         null)));
+        assertEquals("4 3 6 1 5 2 ",
+                     ids(index.getPlants(Constants.SORT_BY_FAMILY, null)));
+    }
+
+    /**
+     * <p>Checks the letter table and the plants for a letter.</p>
+     */
+    public final void testLetters() {
+        int[] counts = index.getLetterCounts();
+        assertEquals(1, counts['a' - 'a']);
+        assertEquals(1, counts['i' - 'a']);
+        assertEquals(3, counts['r' - 'a']);
+        assertEquals(1, counts['z' - 'a']);
+        assertEquals(0, counts['b' - 'a']);
+
+        assertEquals("1 5 2 ",
+                     ids(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER,
+                                         "R")));
+        assertEquals("6 ",
+                     ids(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER,
+                                         "z")));
+        assertTrue(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER, "q")
+                   .isEmpty());
+    }
+
+    /**
+     * <p>Checks prefixes longer than a letter,
+     * and ones that aren't letters at all.</p>
+     */
+    public final void testPrefixes() {
+        assertEquals("2 ",
+                     ids(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER,
+                                         "ROSA R")));
+        assertEquals("1 5 2 ",
+                     ids(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER,
+                                         "rosa")));
+        assertTrue(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER, "1")
+                   .isEmpty());
+        assertTrue(index.getPlants(Constants.SORT_BY_CHOSEN_LETTER, "rosy")
+                   .isEmpty());
+    }
+
+    /**
+     * <p>Checks the family list and the plants in a family.
+     * Families that differ only in case are the same family,
+     * and plants with no family are left out.</p>
+     */
+    public final void testFamilies() {
+        List families = index.getFamilies();
+        assertEquals(3, families.size());
+        assertEquals("Iridaceae", ((Facet) families.get(0)).getValue());
+        assertEquals(3, ((Facet) families.get(2)).getCount());
+
+        assertEquals("1 5 2 ",
+                     ids(index.getPlants(Constants.SORT_BY_CHOSEN_FAMILY,
+                                         "ROSACEAE")));
+        assertTrue(index.getPlants(Constants.SORT_BY_CHOSEN_FAMILY,
+                                   "Liliaceae").isEmpty());
+    }
+
+    /**
+     * <p>Checks finding a plant by its <code>id</code>.</p>
+     */
+    public final void testGetPlant() {
+        assertEquals("Iris", index.getPlant(3).getName());
+        assertNull(index.getPlant(99));
+    }
+
+    /**
+     * <p>Checks that the lists are read-only views
+     * that check their bounds.</p>
+     */
+    public final void testViews() {
+        List plants = index.getPlants(Constants.SORT_BY_CHOSEN_LETTER, "r");
+        assertEquals(3, plants.size());
+        try {
+            plants.get(3);
+            fail("Read past the end of a letter");
+        } catch (IndexOutOfBoundsException ioobe) {
+            // This is what we want
+            assertNotNull(ioobe.getMessage());
+        }
+        try {
+            plants.add(index.getPlant(3));
+            fail("Changed a view");
+        } catch (UnsupportedOperationException uoe) {
+            // This is what we want
+            assertTrue(plants.size() == 3);
+        }
+    }
+
+    /**
+     * <p>Creates a plant with only the names and family set.</p>
+     * @param id The plant's <code>id</code>
+     * @param name The botanical name
+     * @param commonName The common name, or <code>null</code>
+     * @param family The family, or <code>null</code>
+     * @return Plant
+     */
+    private static Plant plant(final int id, final String name,
+                               final String commonName,
+                               final String family) {
+        return new Plant(id, name, commonName, family, null, null, null);
+    }
+
+    /**
+     * <p>Lists the <code>id</code>s of some plants.</p>
+     * @param plants A <code>List</code> of <code>Plant</code> objects
+     * @return String
+     */
+    private static String ids(final List plants) {
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < plants.size(); i++) {
+            text.append(((Plant) plants.get(i)).getId()).append(' ');
+        }
+        return text.toString();
+    }
+}
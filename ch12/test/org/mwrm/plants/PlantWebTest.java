@@ -22,14 +22,18 @@ import org.xml.sax.SAXException;
 
 import junit.framework.TestCase;
 
+import com.meterware.httpunit.GetMethodWebRequest;
 import com.meterware.httpunit.WebConversation;
+import com.meterware.httpunit.WebRequest;
 import com.meterware.httpunit.WebResponse;
 
 /**
  * <p>Tests the plant servlet.
  * It checks that the web application is running
  * and then checks the session is emptied
- * if the there are no results in the query.</p>
+ * if the there are no results in the query.
+ * It checks that a page the browser already has
+ * is not sent again, and that the JSON interface answers.</p>
  */
 public class PlantWebTest extends TestCase {
 
@@ -42,6 +46,12 @@ public class PlantWebTest extends TestCase {
     /** The response code we're looking for. */
     private static final int RESPONSE_CODE = 200;
 
+    /** The response code for an invalid request. */
+    private static final int BAD_REQUEST = 400;
+
+    /** The response code for a page that hasn't changed. */
+    private static final int NOT_MODIFIED = 304;
+
     /**
      * <p>The constructor,
      * which simply calls <code>super(name)</code>.</p>
@@ -107,4 +117,96 @@ public class PlantWebTest extends TestCase {
             fail("Server not available");
         }
     }
+
+    /**
+     * <p>The letter bar should not link to a letter without plants.</p>
+     * @throws MalformedURLException
+     * If the URL of the web server is not correct
+     * @throws SAXException
+     * If the response can't be processed properly
+     */
+    public final void testEmptyLetters()
+        throws MalformedURLException, SAXException {
+        // Create a WebConversation object
+        WebConversation wc = new WebConversation();
+
+        try {
+            WebResponse resp = wc.getResponse(SERVER_URL + WEB_APP
+                                              + "/plants/");
+            // There are no plants beginning with X
+            assertTrue("Letter bar links to an empty letter",
+                       resp.getText().indexOf("letter=X") == -1);
+        } catch (IOException ioe) {
+            // We can't find the server, so we fail the test
+            fail("Server not available");
+        }
+    }
+
+    /**
+     * <p>A browser that sends back the <code>ETag</code> of a page
+     * should be told that the page hasn't changed.</p>
+     * @throws MalformedURLException
+     * If the URL of the web server is not correct
+     * @throws SAXException
+     * If the response can't be processed properly
+     */
+    public final void testNotModified()
+        throws MalformedURLException, SAXException {
+        // Create a WebConversation object
+        WebConversation wc = new WebConversation();
+        String url = SERVER_URL + WEB_APP
+            + "/plants/listPlants.jsp?show=name";
+
+        try {
+            // The first request renders the page and caches it
+            wc.getResponse(url);
+            WebResponse resp = wc.getResponse(url);
+            String etag = resp.getHeaderField("ETag");
+            assertNotNull("No ETag on the results page", etag);
+
+            // Ask for the same page again, saying we have it
+            WebRequest req = new GetMethodWebRequest(url);
+            req.setHeaderField("If-None-Match", etag);
+            resp = wc.getResponse(req);
+            assertEquals("Unchanged results page sent again",
+                         NOT_MODIFIED, resp.getResponseCode());
+        } catch (IOException ioe) {
+            // We can't find the server, so we fail the test
+            fail("Server not available");
+        }
+    }
+
+    /**
+     * <p>The JSON interface should send a page of plants
+     * and turn away an invalid sort order.</p>
+     * @throws MalformedURLException
+     * If the URL of the web server is not correct
+     */
+    public final void testJsonApi() throws MalformedURLException {
+        // Create a WebConversation object
+        WebConversation wc = new WebConversation();
+        wc.setExceptionsThrownOnErrorStatus(false);
+
+        try {
+            WebResponse resp =
+                wc.getResponse(SERVER_URL + WEB_APP
+                               + "/api/plants?sort=family&limit=2");
+            assertEquals("JSON interface not available",
+                         RESPONSE_CODE, resp.getResponseCode());
+            assertEquals("Not a JSON response",
+                         "application/json", resp.getContentType());
+            assertTrue("No plants in the JSON response",
+                       resp.getText().startsWith("{\"plants\":["));
+
+            resp = wc.getResponse(SERVER_URL + WEB_APP
+                                  + "/api/plants?sort=colour");
+            assertEquals("Invalid sort order accepted",
+                         BAD_REQUEST, resp.getResponseCode());
+        } catch (IOException ioe) {
+            // We can't find the server, so we fail the test
+            fail("Server not available");
+        } catch (SAXException saxe) {
+            fail("JSON response treated as markup");
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests completing names from the type-ahead index.</p>
+ */
+public class PrefixIndexTest extends TestCase {
+
+    /** The index under test. */
+    private PrefixIndex index;
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public PrefixIndexTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Creates an index of a few plants, some of which
+     * share names.</p>
+     */
+    protected final void setUp() {
+        index = new PrefixIndex(new Plant[] {
+            plant(1, "Rosa canina", "Dog rose"),
+            plant(2, "Rosa rugosa", "Rose"),
+            plant(3, "Rosmarinus officinalis", "Rosemary"),
+            plant(4, "Iris pseudacorus", null),
+            // The same names again
+            plant(5, "Rosa canina", "Dog rose"),
+            // A common name that is the same as a botanical name
+            plant(6, "Abelia", "Abelia"),
+            plant(7, "Zinnia", "zinnia")
+        });
+    }
+
+    /**
+     * <p>Checks that each name is held once,
+     * but names that differ in case are both kept.</p>
+     */
+    public final void testDuplicates() {
+        assertEquals(10, index.size());
+        assertEquals(Arrays.asList(new String[] {"Dog rose"}),
+                     index.complete("dog", 10));
+        assertEquals(Arrays.asList(new String[] {"Abelia"}),
+                     index.complete("abelia", 10));
+        assertEquals(Arrays.asList(new String[] {"Zinnia", "zinnia"}),
+                     index.complete("Z", 10));
+    }
+
+    /**
+     * <p>Checks that the search starts at the first name
+     * that begins with the prefix, ignoring case, and stops
+     * at the first that doesn't.</p>
+     */
+    public final void testLowerBound() {
+        assertEquals(Arrays.asList(new String[] {"Rosa canina",
+                                                 "Rosa rugosa"}),
+                     index.complete("ROSA", 10));
+        // An exact match comes first
+        assertEquals(Arrays.asList(new String[] {"Rose", "Rosemary"}),
+                     index.complete("rose", 10));
+        assertEquals(Arrays.asList(new String[] {"Abelia"}),
+                     index.complete("a", 10));
+        assertEquals(Arrays.asList(new String[] {"Iris pseudacorus"}),
+                     index.complete("iris ", 10));
+    }
+
+    /**
+     * <p>Checks prefixes that fall between names,
+     * or before or after all of them.</p>
+     */
+    public final void testNoMatch() {
+        assertTrue(index.complete("b", 10).isEmpty());
+        assertTrue(index.complete("ros ", 10).isEmpty());
+        assertTrue(index.complete("zz", 10).isEmpty());
+        assertTrue(index.complete("0", 10).isEmpty());
+        assertTrue(new PrefixIndex(new Plant[0]).complete("a", 10)
+                   .isEmpty());
+    }
+
+    /**
+     * <p>Checks that no more than the limit are returned,
+     * and that they are the first in order.</p>
+     */
+    public final void testLimit() {
+        assertEquals(Arrays.asList(new String[] {"Rosa canina",
+                                                 "Rosa rugosa",
+                                                 "Rose"}),
+                     index.complete("ros", 3));
+        assertEquals(5, index.complete("ros", 5).size());
+        assertEquals(5, index.complete("ros", 50).size());
+        assertTrue(index.complete("ros", 0).isEmpty());
+        assertEquals(10, index.complete("", 50).size());
+    }
+
+    /**
+     * <p>Creates a plant with only the names set.</p>
+     * @param id The plant's <code>id</code>
+     * @param name The botanical name
+     * @param commonName The common name, or <code>null</code>
+     * @return Plant
+     */
+    private static Plant plant(final int id, final String name,
+                               final String commonName) {
+        return new Plant(id, name, commonName, "Family", null, null, null);
+    }
+}
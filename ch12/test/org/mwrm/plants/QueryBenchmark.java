@@ -0,0 +1,325 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * <p>Times the queries that <code>SelectData</code> runs
+ * against tables of different sizes, with and without the indexes
+ * in <code>SQL/migrations/001-sort-indexes.sql</code>.</p>
+ *
+ * <p>For each size, the benchmark fills a scratch table called
+ * <code>plants_benchmark</code> with made-up plants,
+ * times each query, adds the indexes and times them again.
+ * It prints the average time of each query in milliseconds.
+ * The scratch table is dropped afterwards;
+ * the <code>plants</code> table is not touched.</p>
+ *
+ * <p>Usage: <code>QueryBenchmark database.properties [sizes]</code>,
+ * where <code>sizes</code> is a comma-separated list of row counts
+ * (default <code>1000,10000,100000</code>).</p>
+ */
+public final class QueryBenchmark {
+
+    /** The scratch table. */
+    private static final String TABLE = "plants_benchmark";
+
+    /** The table sizes if none are given. */
+    private static final String DEFAULT_SIZES = "1000,10000,100000";
+
+    /** The number of times each query is run before it is timed. */
+    private static final int WARM_UP = 5;
+
+    /** The number of times each query is timed. */
+    private static final int RUNS = 50;
+
+    /** The number of rows inserted in each batch. */
+    private static final int BATCH_SIZE = 1000;
+
+    /** The rows in a page, plus one, as <code>getPage()</code> asks for. */
+    private static final int PAGE = 21;
+
+    /** The made-up families. */
+    private static final String[] FAMILIES = {
+        "Asteraceae", "Liliaceae", "Ranunculaceae", "Rosaceae",
+        "Lamiaceae", "Brassicaceae", "Poaceae", "Fabaceae"
+    };
+
+    /** The names of the queries. */
+    private static final String[] NAMES = {
+        "by name", "by common name", "by family",
+        "letter m", "family Rosaceae", "letter counts"
+    };
+
+    /** The queries, in the same order as <code>NAMES</code>. */
+    private static final String[] QUERIES = {
+        "SELECT * FROM " + TABLE + " ORDER BY name, id LIMIT " + PAGE,
+        "SELECT * FROM " + TABLE + " ORDER BY common_name, id LIMIT " + PAGE,
+        "SELECT * FROM " + TABLE + " ORDER BY family, name, id LIMIT " + PAGE,
+        "SELECT * FROM " + TABLE + " WHERE name LIKE 'm%'"
+        + " ORDER BY name, id LIMIT " + PAGE,
+        "SELECT * FROM " + TABLE + " WHERE family = 'Rosaceae'"
+        + " ORDER BY name, id LIMIT " + PAGE,
+        "SELECT LOWER(SUBSTRING(name, 1, 1)), COUNT(*) FROM " + TABLE
+        + " GROUP BY 1"
+    };
+
+    /** The plants table without its indexes. */
+    private static final String CREATE =
+        "CREATE TABLE " + TABLE + " ("
+        + "id INTEGER NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+        + "name VARCHAR(80) NOT NULL, "
+        + "common_name VARCHAR(80), "
+        + "family VARCHAR(50) NOT NULL, "
+        + "description TEXT NOT NULL, "
+        + "image VARCHAR(20), "
+        + "cultivar_name VARCHAR(80))";
+
+    /** The indexes from the migration. */
+    private static final String INDEX =
+        "ALTER TABLE " + TABLE
+        + " ADD INDEX plants_name (name, id),"
+        + " ADD INDEX plants_common_name (common_name, id),"
+        + " ADD INDEX plants_family (family, name, id)";
+
+    /** This class is not instantiated. */
+    private QueryBenchmark() { }
+
+    /**
+     * <p>Runs the benchmark.</p>
+     * @param args The database properties file and the table sizes
+     * @throws Exception If the benchmark cannot be run
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: QueryBenchmark database.properties "
+                               + "[sizes]");
+            System.exit(1);
+        }
+        Properties properties = load(args[0]);
+        String sizes = DEFAULT_SIZES;
+        if (args.length > 1 && args[1].trim().length() > 0) {
+            sizes = args[1];
+        }
+
+        Class.forName(properties.getProperty("driver.name"));
+        Connection con = DriverManager.getConnection(
+            properties.getProperty("database.root")
+            + properties.getProperty("database.name"),
+            properties.getProperty("database.user"),
+            properties.getProperty("database.password"));
+
+        try {
+            System.out.println(pad("rows", 10) + pad("query", 18)
+                               + pad("no index ms", 14) + "indexed ms");
+            StringTokenizer tokens = new StringTokenizer(sizes, ", ");
+            while (tokens.hasMoreTokens()) {
+                run(con, Integer.parseInt(tokens.nextToken()));
+            }
+        } finally {
+            execute(con, "DROP TABLE IF EXISTS " + TABLE);
+            con.close();
+        }
+    }
+
+    /**
+     * <p>Times the queries against a table of one size.</p>
+     * @param con The connection
+     * @param rows The number of rows in the table
+     * @throws SQLException If a query fails
+     */
+    private static void run(final Connection con, final int rows)
+        throws SQLException {
+        execute(con, "DROP TABLE IF EXISTS " + TABLE);
+        execute(con, CREATE);
+        fill(con, rows);
+
+        double[] plain = new double[QUERIES.length];
+        for (int i = 0; i < QUERIES.length; i++) {
+            plain[i] = time(con, QUERIES[i]);
+        }
+        execute(con, INDEX);
+        for (int i = 0; i < QUERIES.length; i++) {
+            System.out.println(pad(String.valueOf(rows), 10)
+                               + pad(NAMES[i], 18)
+                               + pad(format(plain[i]), 14)
+                               + format(time(con, QUERIES[i])));
+        }
+    }
+
+    /**
+     * <p>Fills the scratch table with made-up plants.
+     * The same plants are made every time.</p>
+     * @param con The connection
+     * @param rows The number of plants
+     * @throws SQLException If the plants cannot be inserted
+     */
+    private static void fill(final Connection con, final int rows)
+        throws SQLException {
+        Random random = new Random(rows);
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        PreparedStatement stmt = con.prepareStatement(
+            "INSERT INTO " + TABLE + " (name, common_name, family,"
+            + " description) VALUES (?, ?, ?, ?)");
+        try {
+            for (int i = 0; i < rows; i++) {
+                String name = word(random) + " " + word(random);
+                stmt.setString(1, name);
+                stmt.setString(2, word(random));
+                stmt.setString(3, FAMILIES[random.nextInt(FAMILIES.length)]);
+                stmt.setString(4, "A made-up plant called " + name + ".");
+                stmt.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+            con.commit();
+        } finally {
+            stmt.close();
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * <p>Returns the average time a query takes, reading every row.</p>
+     * @param con The connection
+     * @param sql The query
+     * @return The time in milliseconds
+     * @throws SQLException If the query fails
+     */
+    private static double time(final Connection con, final String sql)
+        throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            for (int i = 0; i < WARM_UP; i++) {
+                read(stmt, sql);
+            }
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < RUNS; i++) {
+                read(stmt, sql);
+            }
+            return (double) (System.currentTimeMillis() - start) / RUNS;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * <p>Runs a query and reads every row.</p>
+     * @param stmt The statement
+     * @param sql The query
+     * @throws SQLException If the query fails
+     */
+    private static void read(final Statement stmt, final String sql)
+        throws SQLException {
+        ResultSet rs = stmt.executeQuery(sql);
+        try {
+            while (rs.next()) {
+                rs.getString(1);
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * <p>Runs a statement that returns no rows.</p>
+     * @param con The connection
+     * @param sql The statement
+     * @throws SQLException If the statement fails
+     */
+    private static void execute(final Connection con, final String sql)
+        throws SQLException {
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute(sql);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * <p>Makes up a word, starting with a capital letter.</p>
+     * @param random The source of letters
+     * @return String
+     */
+    private static String word(final Random random) {
+        int length = 4 + random.nextInt(8);
+        StringBuffer word = new StringBuffer(length);
+        word.append((char) ('A' + random.nextInt(26)));
+        for (int i = 1; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * <p>Reads the database properties.</p>
+     * @param file The properties file
+     * @return Properties
+     * @throws IOException If the file cannot be read
+     */
+    private static Properties load(final String file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    /**
+     * <p>Writes a time with two decimal places.</p>
+     * @param millis The time in milliseconds
+     * @return String
+     */
+    private static String format(final double millis) {
+        return String.valueOf(Math.round(millis * 100) / 100.0);
+    }
+
+    /**
+     * <p>Pads a column of the table with spaces.</p>
+     * @param text The text
+     * @param width The width of the column
+     * @return String
+     */
+    private static String pad(final String text, final int width) {
+        StringBuffer padded = new StringBuffer(text);
+        while (padded.length() < width) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests the keyword search index:
+ * prefix matching, ranking and updating it one plant at a time.</p>
+ */
+public class SearchIndexTest extends TestCase {
+
+    /** A rose, with "rose" in its common name and description. */
+    private static final Plant DOG_ROSE =
+        new Plant(1, "Rosa canina", "Dog rose", "Rosaceae",
+                  "A wild rose of hedges", null, null);
+
+    /** Rosemary, which only has words beginning with "ros". */
+    private static final Plant ROSEMARY =
+        new Plant(2, "Rosmarinus officinalis", "Rosemary", "Lamiaceae",
+                  "A herb", null, null);
+
+    /** An iris, with "rose" in its description only. */
+    private static final Plant IRIS =
+        new Plant(3, "Iris pseudacorus", "Yellow flag", "Iridaceae",
+                  "Grows by ponds, unlike the rose", null, null);
+
+    /** The index under test. */
+    private SearchIndex index;
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public SearchIndexTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Creates an index of the three plants.</p>
+     */
+    protected final void setUp() {
+        index = new SearchIndex();
+        index.update(new Plant[] {DOG_ROSE, ROSEMARY, IRIS});
+    }
+
+    /**
+     * <p>Checks how text is split into words.</p>
+     */
+    public final void testTokenize() {
+        assertEquals(Arrays.asList(new String[] {"rosa", "x", "alba",
+                                                 "no", "2"}),
+                     SearchIndex.tokenize("  Rosa x ALBA, 'No.2'"));
+        assertTrue(SearchIndex.tokenize(null).isEmpty());
+        assertTrue(SearchIndex.tokenize(" -, ").isEmpty());
+    }
+
+    /**
+     * <p>Checks that a query word matches every word it begins,
+     * and that plants with the same score are in name order.</p>
+     */
+    public final void testPrefix() {
+        assertEquals(ids(new int[] {1, 2, 3}), ids(index.search("ros")));
+        assertEquals(ids(new int[] {2}), ids(index.search("ROSEM")));
+        assertTrue(index.search("rosy").isEmpty());
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search("--").isEmpty());
+    }
+
+    /**
+     * <p>Checks that a plant must match every word in a query.</p>
+     */
+    public final void testEveryWord() {
+        assertEquals(ids(new int[] {1}), ids(index.search("rose hedge")));
+        assertEquals(ids(new int[] {3}), ids(index.search("iris rose")));
+        assertTrue(index.search("rosemary hedge").isEmpty());
+    }
+
+    /**
+     * <p>Checks the ranking: a word in a name counts for more
+     * than a word in the description, even when the description
+     * matches exactly and the name only matches a prefix,
+     * and an exact match counts for more than a prefix.</p>
+     */
+    public final void testWeighting() {
+        // The dog rose has "rose" in its common name,
+        // rosemary begins with it, and the iris only describes it
+        assertEquals(ids(new int[] {1, 2, 3}), ids(index.search("rose")));
+
+        // "hedges" exactly beats "hedge", but both are descriptions
+        Plant hedge = new Plant(4, "Ligustrum", null, "Oleaceae",
+                                "Used for a hedge", null, null);
+        index.update(new Plant[] {DOG_ROSE, ROSEMARY, IRIS, hedge});
+        assertEquals(ids(new int[] {4, 1}), ids(index.search("hedge")));
+        assertEquals(ids(new int[] {1}), ids(index.search("hedges")));
+    }
+
+    /**
+     * <p>Checks that an update only changes the plants
+     * that were added, changed or removed.</p>
+     */
+    public final void testUpdate() {
+        assertEquals(3, index.size());
+        assertEquals(3, index.getUpdateCount());
+
+        // Nothing has changed
+        index.update(new Plant[] {IRIS, DOG_ROSE, ROSEMARY});
+        assertEquals(3, index.getUpdateCount());
+
+        // The iris loses its rose, and rosemary goes
+        int words = index.getWordCount();
+        Plant iris = new Plant(3, "Iris pseudacorus", "Yellow flag",
+                               "Iridaceae", "Grows by ponds", null, null);
+        index.update(new Plant[] {DOG_ROSE, iris});
+        assertEquals(2, index.size());
+        // One removed and added, one removed
+        assertEquals(6, index.getUpdateCount());
+        assertEquals(ids(new int[] {1}), ids(index.search("ros")));
+        assertTrue(index.search("rosemary").isEmpty());
+        assertTrue("Unused words kept", index.getWordCount() < words);
+
+        // The changed plant is returned as it is now
+        assertEquals("Grows by ponds",
+                     ((Plant) index.search("ponds").get(0))
+                     .getDescription());
+
+        // Rosemary comes back
+        index.update(new Plant[] {DOG_ROSE, iris, ROSEMARY});
+        assertEquals(ids(new int[] {1, 2}), ids(index.search("ros")));
+        // Only the iris used "unlike" and "the"
+        assertEquals(words - 2, index.getWordCount());
+    }
+
+    /**
+     * <p>Lists the <code>id</code>s of some plants.</p>
+     * @param plants A <code>List</code> of <code>Plant</code> objects
+     * @return String
+     */
+    private static String ids(final List plants) {
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < plants.size(); i++) {
+            text.append(((Plant) plants.get(i)).getId()).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * <p>Lists some <code>id</code>s in the form
+     * <code>ids(List)</code> uses.</p>
+     * @param expected The <code>id</code>s
+     * @return String
+     */
+    private static String ids(final int[] expected) {
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < expected.length; i++) {
+            text.append(expected[i]).append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.mwrm.plants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>Tests the SQL that <code>SelectData</code> uses
+ * to seek to a page in a sort order.
+ * The database isn't needed for this.</p>
+ */
+public class SelectDataTest extends TestCase {
+
+    /** The parameter values of the last seek. */
+    private List parameters;
+
+    /**
+     * <p>The constructor,
+     * which simply calls <code>super(name)</code>.</p>
+     * @param name The name of the test
+     */
+    public SelectDataTest(final String name) {
+        super(name);
+    }
+
+    /**
+     * <p>Checks seeking forwards and backwards by botanical name.</p>
+     */
+    public final void testSeekByName() {
+        assertEquals("(name > ? OR (name = ? AND id > ?))",
+                     seek(Constants.SORT_BY_NAME, "Iris", true));
+        assertEquals(Arrays.asList(new Object[] {"Iris", "Iris",
+                                                 new Integer(5)}),
+                     parameters);
+
+        assertEquals("(name < ? OR (name = ? AND id < ?))",
+                     seek(Constants.SORT_BY_NAME, "Iris", false));
+    }
+
+    /**
+     * <p>Checks seeking by family, which ties on the name and then
+     * on the <code>id</code>.</p>
+     */
+    public final void testSeekByFamily() {
+        PageToken token = PageToken.after(Constants.SORT_BY_FAMILY,
+            new Plant(5, "Iris", null, "Iridaceae", null, null, null));
+        StringBuffer sql = new StringBuffer();
+        parameters = new ArrayList();
+        SelectData.appendSeek(sql, parameters,
+                              PageToken.getColumns(Constants.SORT_BY_FAMILY),
+                              token.getValues(), 0, true);
+        assertEquals("(family > ? OR (family = ? AND "
+                     + "(name > ? OR (name = ? AND id > ?))))",
+                     sql.toString());
+        assertEquals(5, parameters.size());
+    }
+
+    /**
+     * <p>Checks seeking from a common name, where the plants
+     * with no common name come first.</p>
+     */
+    public final void testSeekByCommonName() {
+        assertEquals("(common_name > ? OR (common_name = ? AND id > ?))",
+                     seek(Constants.SORT_BY_COMMON_NAME, "Flag", true));
+
+        // Going back from a name passes every null
+        assertEquals("(common_name < ? OR common_name IS NULL OR "
+                     + "(common_name = ? AND id < ?))",
+                     seek(Constants.SORT_BY_COMMON_NAME, "Flag", false));
+    }
+
+    /**
+     * <p>Checks seeking from a plant with no common name,
+     * which ties with the other nulls on the <code>id</code>.</p>
+     */
+    public final void testSeekFromNullCommonName() {
+        assertEquals("(common_name IS NOT NULL OR id > ?)",
+                     seek(Constants.SORT_BY_COMMON_NAME, null, true));
+        assertEquals(Arrays.asList(new Object[] {new Integer(5)}),
+                     parameters);
+
+        assertEquals("(common_name IS NULL AND id < ?)",
+                     seek(Constants.SORT_BY_COMMON_NAME, null, false));
+        assertEquals(1, parameters.size());
+    }
+
+    /**
+     * <p>Checks that the page before a place is read
+     * in the reverse order.</p>
+     */
+    public final void testOrder() {
+        String[] columns = PageToken.getColumns(Constants.SORT_BY_FAMILY);
+
+        StringBuffer sql = new StringBuffer();
+        SelectData.appendOrder(sql, columns, true);
+        assertEquals(" ORDER BY family, name, id", sql.toString());
+
+        sql = new StringBuffer();
+        SelectData.appendOrder(sql, columns, false);
+        assertEquals(" ORDER BY family DESC, name DESC, id DESC",
+                     sql.toString());
+    }
+
+    /**
+     * <p>Builds the seek condition from a plant with the <code>id</code>
+     * 5, through a page token as <code>getPage()</code> does.</p>
+     * @param choice The sort choice
+     * @param key The plant's value for the first sort column
+     * @param forward Whether to seek forwards
+     * @return The SQL condition
+     */
+    private String seek(final int choice, final String key,
+                        final boolean forward) {
+        Plant plant;
+        if (choice == Constants.SORT_BY_COMMON_NAME) {
+            plant = new Plant(5, "Iris", key, "Iridaceae", null, null, null);
+        } else {
+            plant = new Plant(5, key, null, "Iridaceae", null, null, null);
+        }
+        PageToken token;
+        if (forward) {
+            token = PageToken.after(choice, plant);
+        } else {
+            token = PageToken.before(choice, plant);
+        }
+        token = PageToken.decode(token.encode());
+
+        StringBuffer sql = new StringBuffer();
+        parameters = new ArrayList();
+        SelectData.appendSeek(sql, parameters, PageToken.getColumns(choice),
+                              token.getValues(), 0, token.isForward());
+        return sql.toString();
+    }
+}